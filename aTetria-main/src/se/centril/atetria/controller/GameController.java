@@ -26,6 +26,7 @@ import se.centril.atetria.model.Board.SanityException;
 import se.centril.atetria.model.Game;
 import se.centril.atetria.model.Game.GameOverEvent;
 import se.centril.atetria.model.PieceFactory;
+import se.centril.atetria.model.SanityLevel;
 import se.centril.atetria.model.command.Command;
 import se.centril.atetria.model.retriever.RandomizedPieceRetriever;
 import se.centril.atetria.view.GameView;
@@ -54,7 +55,10 @@ public class GameController extends BaseGdxController implements CommandReceiver
 		rpr.setRandomizer( new MersenneTwisterFast() );
 		rpr.setPieceFactory( new PieceFactory() );
 
-		this.game = new Game( new Board( 10, 20, 4 ) );
+		Board board = new Board( 10, 20, 4 );
+		board.setSanityLevel( SanityLevel.SAMPLED );
+
+		this.game = new Game( board );
 		this.game.setNextQueueSize( 5 );
 		this.game.setPieceRetriever( rpr );
 
@@ -65,6 +65,9 @@ public abstract class AbstractFactory<K, V> implements Factory<K, V> {
 	 */
 	protected final Map<K, FactoryInstantiator<K, V>> relations;
 
+	/** The keys as a list for random selection, null when the relations changed since it was made. */
+	private List<K> keyList;
+
 	/**
 	 * Constructor: creates the relations map.
 	 */
@@ -100,6 +103,7 @@ public abstract class AbstractFactory<K, V> implements Factory<K, V> {
 	 */
 	public AbstractFactory<K, V> add( final K key, final FactoryInstantiator<K, V> instantiator ) {
 		relations.put( key, instantiator );
+		this.keyList = null;
 		return this;
 	}
 
@@ -110,6 +114,7 @@ public abstract class AbstractFactory<K, V> implements Factory<K, V> {
 	 */
 	public AbstractFactory<K, V> remove( final K key ) {
 		relations.remove( key );
+		this.keyList = null;
 		return this;
 	}
 
@@ -171,7 +176,7 @@ public abstract class AbstractFactory<K, V> implements Factory<K, V> {
 	 * @return The randomly selected produced item.
 	 */
 	public V getRandom( final Random rng ) {
-		List<K> keys = new ArrayList<K>( this.getKeys() );
+		List<K> keys = this.keyList();
 		return this.get( keys.get( rng.nextInt( keys.size() ) ) );
 	}
 
@@ -183,7 +188,21 @@ public abstract class AbstractFactory<K, V> implements Factory<K, V> {
 	 * @return The randomly selected produced item.
 	 */
 	public V getRandom( final Randomizer rng ) {
-		List<K> keys = new ArrayList<K>( this.getKeys() );
+		List<K> keys = this.keyList();
 		return this.get( keys.get( rng.nextInt( keys.size() ) ) );
 	}
+
+	/**
+	 * Returns the keys as a list, only remade when the relations
+	 * changed so that random selection allocates nothing.
+	 *
+	 * @return The list of keys.
+	 */
+	private List<K> keyList() {
+		if ( this.keyList == null ) {
+			this.keyList = new ArrayList<K>( this.getKeys() );
+		}
+
+		return this.keyList;
+	}
 }
\ No newline at end of file
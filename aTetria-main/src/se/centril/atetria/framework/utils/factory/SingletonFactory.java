@@ -47,7 +47,6 @@ public abstract class SingletonFactory<K, T> extends AbstractFactory<K, T> {
 	 * @param instantiator A FactoryInstantiator used to instantiate an object.
 	 */
 	public AbstractFactory<K, T> add( final K key, final FactoryInstantiator<K, T> instantiator) {
-		this.relations.put( key, new FactorySingletonInstantiator<K, T>( instantiator ) );
-		return this;
+		return super.add( key, new FactorySingletonInstantiator<K, T>( instantiator ) );
 	}
 }
@@ -16,54 +16,188 @@
  */
 package se.centril.atetria.model;
 
-import java.util.List;
+import java.util.Arrays;
 
 import se.centril.atetria.framework.geom.FinalPosition;
 import se.centril.atetria.framework.geom.Position;
-import se.centril.atetria.model.segmenter.Segment;
-import se.centril.atetria.model.segmenter.StickySegmentFinder;
+import se.centril.atetria.framework.rng.MersenneTwisterFast;
+import se.centril.atetria.model.segmenter.SegmentLabeler;
+import se.centril.atetria.model.segmenter.TetrominoSegmentLabeler;
+
+import com.google.common.base.Preconditions;
 
 /**
  * Board represents the grid-board of the game.
  *
- * <p>The grid-board is implemented as a matrix of boolean states
- * which can be either {@link #FILLED} or {@link #EMPTY}
+ * <p>The grid-board is implemented as a matrix of states
+ * which can be either a {@link Piece} or {@link #EMPTY}
  * The state of each element can be accessed with either
  * with a Position by {@link #getState(Position)} or
  * with x, y coordinates by {@link #getState(int, int)}.</p>
  *
+ * <p>The matrix stores one byte per position, the ordinal of its tetromino.
+ * A filled state is returned as the interned piece of its tetromino, see {@link Piece#of(Tetromino)},
+ * and {@link #getType(int, int)} returns the tetromino directly.</p>
+ *
+ * <p>Occupancy is additionally kept as a bitboard: each row is a packed
+ * sequence of long words where bit x is set iff (x, y) is filled.
+ * The piece-matrix is only an identity plane, all structural queries
+ * (collision, filled rows, clearing, column heights) work on the words.</p>
+ *
+ * <p>When the height fits in a long, occupancy is also kept column-major,
+ * one long per column, making a column height a leading-zero count.</p>
+ *
+ * <p>Rows are stored row-major in row buffers linked into place by a row index.
+ * Clearing unlinks the filled buffers & relinks them empty on top,
+ * so rows above move down without copying any cells.
+ * Buffers are only allocated as the stack grows, empty rows above it
+ * share one read only buffer, so very tall boards stay cheap.</p>
+ *
  * <p>The board is constructed with a width & height
  * which also decides how many elements there are in the matrix.
  * The with and height can be retrieved with
  * {@link #getWidth()} and {@link #getHeight()}</p>
  * 
- * <p>At all times, committed version of the grid is kept,
- * so even if bad modifications are made, they can be
+ * <p>At all times, every change since the last committed version
+ * of the grid is journaled, so even if bad modifications are made, they can be
  * reverted with {@link #undo()} to last committed state.
  * When {@link #commit()} is called reverting back is impossible.</p>
  *
+ * <p>Independently of commits, nested savepoints can be taken with {@link #mark()}.
+ * All changes after a savepoint can be reverted with {@link #rollbackTo(int)},
+ * and a savepoint that is no longer needed is dropped with {@link #release(int)}.
+ * This lets search place & clear several pieces in a row on one board and unwind them,
+ * paying only for the cells that changed.</p>
+ *
+ * <p>A 64-bit Zobrist hash of the state of the board is maintained
+ * incrementally on every change and is retrieved with {@link #stateHash()}.
+ * Each row hashes its content as the xor of one key per filled (column, tetromino),
+ * and the board hash is the xor of each row hash multiplied by a key per row.
+ * Two boards of equal dimensions with equal contents always have equal hashes.</p>
+ *
+ * <p>Invariants are checked after mutations as decided per board
+ * by {@link #setSanityLevel(SanityLevel)}, a {@link SanityException}
+ * is thrown when they don't hold. Checking is off by default.</p>
+ *
  * <p>A placement in the board can be made
  * with {@link #place(Piece, Position)}
  * and clearing of filled rows can be made with:
- * {@link #clearRows()}</p>
+ * {@link #clearRows()}. Garbage rows are pushed in
+ * from the bottom with {@link #addGarbage(int, int, Piece)}.</p>
+ *
+ * <p>Immutable snapshots sharing unchanged rows can be taken with {@link #snapshot()}.
+ * Consumers that only want to process what changed register a {@link DirtyTracker}
+ * with {@link #trackChanges()}.</p>
  */
 public final class Board {
-	public static boolean DEBUG = true;
-
-	/** Indicates that a state in the {@link #grid} is empty (null). */
+	/** Indicates that a state in the board is empty (null). */
 	public final static Piece EMPTY = null;
 
-	/** Stores the state of each position on grid of board. */
-	private Piece[][] grid;
+	/** The code of an empty position in {@link #cells}, other codes are tetromino ordinal + 1. */
+	private static final byte EMPTY_CODE = 0;
+
+	/** Number of bits in an occupancy word. */
+	private static final int WORD_BITS = 64;
+
+	/** Seed of the Zobrist keys, fixed so that hashes are comparable between boards & runs. */
+	private static final long ZOBRIST_SEED = 0x5EED7E7A1A000001L;
+
+	/** The default no. of mutations between checks in {@link SanityLevel#SAMPLED}. */
+	public static final int DEFAULT_SANITY_INTERVAL = 64;
+
+	/** The buffer shared by all rows above capacity, it is always empty & never written. */
+	private static final int ZERO_BUFFER = 0;
+
+	/** The no. of row buffers allocated up front. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Zobrist keys per position code, odd & shared by all boards.<br/>
+	 * The key of a cell is the product of the key of its code & of its column,
+	 * so that any polyomino, also those defined later, has keys.
+	 */
+	private static final long[] CODE_KEYS = codeKeys();
+
+	/**
+	 * Row index: row y is stored in the row buffer slots[y].<br/>
+	 * All per row storage below is indexed by buffer, not by row,
+	 * so rows are moved by relinking the index alone.<br/>
+	 * Rows [0, capacity) are linked to the buffers [1, capacity],
+	 * rows above are empty & all linked to the read only {@link #ZERO_BUFFER}.
+	 */
+	private int[] slots;
+
+	/** The no. of rows with a buffer of their own, buffers are allocated as the stack grows. */
+	private int capacity;
+
+	/**
+	 * Stores the polyomino of each position on grid of board, one byte per position,
+	 * row-major: cells[buffer * width + x], see {@link #EMPTY_CODE}.
+	 */
+	private byte[] cells;
 	private int[] widths;
+
+	/** The no. of filled rows, nothing needs to be scanned by a clear when there are none. */
+	private int fullRows;
 	private int[] heights;
 	private int maxHeight;
 
-	/** Holds a deep copy of grid used for undoing/reverting back to committed state. */
-	private Piece[][] gridCopy;
-	private int[] widthsCopy;
-	private int[] heightsCopy;
-	private int maxHeightCopy;
+	/**
+	 * Occupancy bitboard, row buffer b occupies words [b * words, (b + 1) * words).
+	 * Bit (x % 64) of word (x / 64) is set iff (x, y) is filled.
+	 */
+	private long[] rows;
+
+	/**
+	 * Column-major occupancy, bit y of columns[x] is set iff (x, y) is filled.<br/>
+	 * Only kept when the height of board fits in a long, null otherwise.
+	 */
+	private long[] columns;
+
+	/** The number of words per row in {@link #rows}. */
+	private int words;
+
+
+	/** Zobrist keys per column & per row, see {@link #CODE_KEYS}. */
+	private long[] columnKeys;
+	private long[] rowKeys;
+
+	/** The content hash of each row & the hash of the whole board. */
+	private long[] rowHashes;
+	private long stateHash;
+
+	/** Snapshot rows of each row buffer, null when the buffer changed since last snapshot. */
+	private BoardSnapshot.Row[] snapshotRows;
+	private BoardSnapshot.Row snapshotEmpty;
+
+	/** The chunks of rows of the last snapshot, shared with the next while unchanged. */
+	private BoardSnapshot.Row[][] snapshotChunks;
+
+	/** Bit c % 64 of staleChunks[c / 64] is set iff a row of chunk c changed since the last snapshot. */
+	private long[] staleChunks;
+
+	/** Work rows removed by a clear & their buffers. */
+	private int[] removedWork;
+	private int[] slotsWork;
+
+	/** The incrementally maintained features of board. */
+	private BoardFeatures features;
+
+	/** Journals all changes since last commit, used for undoing/reverting back to committed state. */
+	private final BoardJournal journal = new BoardJournal();
+
+	/** Whether or not the board is in the committed state. */
+	private boolean committed = true;
+
+	/** The journal position that {@link #undo()} reverts to. */
+	private int undoPoint;
+
+	/** Journal positions of the savepoints, in taking order. */
+	private int[] marks = new int[8];
+	private int markCount;
+
+	/** Whether or not changes are currently journaled: uncommitted or savepoints exist. */
+	private boolean journaling;
 
 	/** The dimensions of board. */
 	private final FinalPosition dim;
@@ -72,6 +206,54 @@ public final class Board {
 
 	private ClearMode clearMode = ClearMode.STANDARD;
 
+	/** Labels segments for the cascade clearing modes, created on first use. */
+	private SegmentLabeler labeler;
+
+	/**
+	 * Rows of rooted positions in sticky {@link ClearMode#CASCADE}, <code>words</code> per row:
+	 * filled positions held up from below, on the floor or in a run of
+	 * filled positions in a row with a rooted position right below the run.
+	 * Only rows below rootedValid are up to date, the rest are recomputed on demand.
+	 */
+	private long[] rooted = new long[0];
+	private int rootedValid;
+
+	/** Rows below which {@link #isRooted(int, int)} answers, 0 outside of labeling. */
+	private int rootedTo;
+
+	/** How thoroughly invariants are checked after mutations. */
+	private SanityLevel sanityLevel = SanityLevel.OFF;
+
+	/** Every n:th mutation is checked in {@link SanityLevel#SAMPLED}. */
+	private int sanityInterval = DEFAULT_SANITY_INTERVAL;
+
+	/** Mutations since last sampled check. */
+	private int uncheckedMutations;
+
+	/** The rows changed since last sampled check, null unless in {@link SanityLevel#SAMPLED}. */
+	private DirtyTracker sanityTracker;
+
+	/** Work flags per labeled segment, true if it rests. */
+	private boolean[] restingWork = new boolean[0];
+
+	/** Work flags per labeled segment, true if it fell in the current chain step. */
+	private boolean[] movedWork = new boolean[0];
+
+	/** Work queue of labeled segments. */
+	private int[] segmentsWork = new int[0];
+
+	/** Work codes of the positions of falling segments. */
+	private byte[] codesWork = new byte[0];
+
+	/** Work column-major masks of the falling positions, only used with {@link #columns}. */
+	private long[] fallingWork;
+
+	/** The cached landings of pieces, created on first use. */
+	private LandingTable landings;
+
+	/** The registered dirty trackers, replaced on (un)registering. */
+	private DirtyTracker[] trackers = new DirtyTracker[0];
+
 	/**
 	 * Constructs a Board with given width & height.
 	 *
@@ -90,8 +272,7 @@ public final class Board {
 	 * @param dim the dimensions of board.
 	 */
 	public Board( Position dim, final int topSpace ) {
-		this.dim = new FinalPosition( dim );
-		this.topSpace = topSpace;
+		this( dim.x(), dim.y(), topSpace );
 	}
 
 	/**
@@ -112,472 +293,2052 @@ public final class Board {
 		return this.topSpace;
 	}
 
+	/**
+	 * Returns the clearing mode used by {@link #clearRows()}.
+	 *
+	 * @return the clearing mode.
+	 */
+	public ClearMode getClearMode() {
+		return this.clearMode;
+	}
+
+	/**
+	 * Sets the clearing mode used by {@link #clearRows()}.
+	 *
+	 * @param clearMode the clearing mode.
+	 */
+	public void setClearMode( ClearMode clearMode ) {
+		this.clearMode = Preconditions.checkNotNull( clearMode );
+
+		// The labeler depends on the mode.
+		this.labeler = null;
+	}
+
+	/**
+	 * Returns how thoroughly invariants are checked after mutations.
+	 *
+	 * @return the sanity level.
+	 */
+	public SanityLevel getSanityLevel() {
+		return this.sanityLevel;
+	}
+
+	/**
+	 * Sets how thoroughly invariants are checked after mutations.
+	 *
+	 * @param sanityLevel the sanity level.
+	 */
+	public void setSanityLevel( SanityLevel sanityLevel ) {
+		this.sanityLevel = Preconditions.checkNotNull( sanityLevel );
+		this.uncheckedMutations = 0;
+
+		// A new tracker is all dirty, so the first sample checks every row.
+		if ( sanityLevel == SanityLevel.SAMPLED ) {
+			if ( this.sanityTracker == null ) {
+				this.sanityTracker = this.trackChanges();
+			}
+		} else if ( this.sanityTracker != null ) {
+			this.untrack( this.sanityTracker );
+			this.sanityTracker = null;
+		}
+	}
+
+	/**
+	 * Returns the no. of mutations between checks in {@link SanityLevel#SAMPLED}.
+	 *
+	 * @return the interval.
+	 */
+	public int getSanityInterval() {
+		return this.sanityInterval;
+	}
+
+	/**
+	 * Sets the no. of mutations between checks in {@link SanityLevel#SAMPLED}.
+	 *
+	 * @param sanityInterval the interval, must be positive.
+	 */
+	public void setSanityInterval( int sanityInterval ) {
+		Preconditions.checkArgument( sanityInterval > 0, "sanity interval must be positive" );
+		this.sanityInterval = sanityInterval;
+		this.uncheckedMutations = 0;
+	}
+
 	/**
 	 * Initializes the grid.<br/>
 	 * Constructor helper.
 	 */
 	private void initGrid() {
-		this.grid = this.initializedGrid();
-		this.gridCopy = null;
-
-		this.widths = new int[this.getHeight()];
-		this.widthsCopy = null;
+		this.words = (this.getWidth() + WORD_BITS - 1) / WORD_BITS;
+
+		// All rows start out empty without buffers of their own.
+		this.slots = new int[this.getHeight()];
+		this.capacity = 0;
+		this.cells = new byte[this.getWidth()];
+		this.rows = new long[this.words];
+		this.widths = new int[1];
+		this.rowHashes = new long[1];
+		this.snapshotRows = new BoardSnapshot.Row[1];
+		this.removedWork = new int[0];
+		this.slotsWork = new int[0];
+		this.ensureRows( Math.min( this.getHeight(), INITIAL_CAPACITY ) );
+
+		this.snapshotEmpty = new BoardSnapshot.Row( new byte[this.getWidth()], 0 );
+		final int chunks = (this.getHeight() + BoardSnapshot.CHUNK_ROWS - 1) >>> BoardSnapshot.CHUNK_SHIFT;
+		this.snapshotChunks = new BoardSnapshot.Row[chunks][];
+		this.staleChunks = new long[(chunks + WORD_BITS - 1) / WORD_BITS];
+		Arrays.fill( this.staleChunks, -1L );
+		this.columns = this.getHeight() <= WORD_BITS ? new long[this.getWidth()] : null;
+
+		this.initZobrist();
 
 		this.heights = new int[this.getWidth()];
-		this.heightsCopy = null;
-
+		this.fallingWork = new long[this.getWidth()];
 		this.maxHeight = 0;
-		this.maxHeightCopy = 0;
+
+		this.features = new BoardFeatures( this );
+
+		this.journal.clear();
+		this.committed = true;
+		this.markCount = 0;
+		this.updateJournaling();
 	}
 
 	/**
-	 * Returns the width of board.
+	 * Generates the Zobrist keys.<br/>
+	 * Row keys are odd so that multiplying by them never loses bits of a row hash.
+	 */
+	private void initZobrist() {
+		MersenneTwisterFast rng = new MersenneTwisterFast( ZOBRIST_SEED );
+
+		this.columnKeys = new long[this.getWidth()];
+		for ( int x = 0; x < this.columnKeys.length; x++ ) {
+			this.columnKeys[x] = rng.nextLong() | 1L;
+		}
+
+		this.rowKeys = new long[this.getHeight()];
+		for ( int y = 0; y < this.rowKeys.length; y++ ) {
+			this.rowKeys[y] = rng.nextLong() | 1L;
+		}
+
+		this.stateHash = 0;
+	}
+
+	/**
+	 * Generates the Zobrist keys of all position codes.
 	 *
-	 * @return The width of board.
+	 * @return the keys, indexed by unsigned code.
 	 */
-	public int getWidth() {
-		return this.dim.x();
+	private static long[] codeKeys() {
+		MersenneTwisterFast rng = new MersenneTwisterFast( ~ZOBRIST_SEED );
+
+		long[] keys = new long[Polyomino.MAX_COUNT + 1];
+		for ( int i = 0; i < keys.length; i++ ) {
+			keys[i] = rng.nextLong() | 1L;
+		}
+
+		return keys;
 	}
 
 	/**
-	 * Returns the height of board.
+	 * Makes sure rows [0, count) have buffers of their own,
+	 * growing the buffer storage geometrically.<br/>
+	 * Memory is thus proportional to the highest the stack has been, not to the height of board.
 	 *
-	 * @return The height of board.
+	 * @param count the no. of rows.
 	 */
-	public int getHeight() {
-		return this.dim.y();
+	private void ensureRows( final int count ) {
+		if ( count <= this.capacity ) {
+			return;
+		}
+
+		final int capacity = Math.min( this.getHeight(), Math.max( count, this.capacity * 2 ) );
+		final int buffers = capacity + 1;
+
+		this.cells = Arrays.copyOf( this.cells, buffers * this.getWidth() );
+		this.rows = Arrays.copyOf( this.rows, buffers * this.words );
+		this.widths = Arrays.copyOf( this.widths, buffers );
+		this.rowHashes = Arrays.copyOf( this.rowHashes, buffers );
+		this.snapshotRows = Arrays.copyOf( this.snapshotRows, buffers );
+		this.removedWork = Arrays.copyOf( this.removedWork, capacity );
+		this.slotsWork = Arrays.copyOf( this.slotsWork, capacity );
+
+		// The new rows are empty, link them to the new buffers.
+		for ( int y = this.capacity; y < capacity; y++ ) {
+			this.slots[y] = y + 1;
+		}
+
+		this.capacity = capacity;
 	}
 
 	/**
-	 * Returns dimensions of board.
+	 * Returns the Zobrist key of a position code at column x, 0 for {@link #EMPTY_CODE}.
 	 *
-	 * @return The boards dimensions.
+	 * @param code the position code.
+	 * @param x the column.
+	 * @return the key.
 	 */
-	public FinalPosition getSize() {
-		return this.dim;
+	private long cellKey( final byte code, final int x ) {
+		return code == EMPTY_CODE ? 0 : this.columnKeys[x] * CODE_KEYS[code & 0xFF];
 	}
 
 	/**
-	 * Gets the state of a position on board.<br/>
-	 * Valid states are {@link Tetromino} or {@link #EMPTY} (null).
+	 * Returns the position code of a state: the id of its polyomino + 1,
+	 * stored unsigned in a byte, see {@link Polyomino#MAX_COUNT}.
 	 *
-	 * @param pos Position to get state of.
-	 * @return Retrieved state.
+	 * @param state the state.
+	 * @return the code.
 	 */
-	public final Piece getState( final Position pos ) {
-		return this.getState( pos.x(), pos.y() );
+	static byte encode( final Piece state ) {
+		return state == EMPTY ? EMPTY_CODE : (byte) (state.getPolyomino().getId() + 1);
 	}
 
 	/**
-	 * Gets the state of a position on board.<br/>
-	 * Valid states are {@link Tetromino} or {@link #EMPTY} (null).
+	 * Returns the polyomino of a position code.
 	 *
-	 * @param x x-axis-component of position.
-	 * @param y y-axis-component of position.
-	 * @return Retrieved state.
+	 * @param code the code.
+	 * @return the polyomino, or null if empty.
 	 */
-	public final Piece getState( final int x, final int y ) {
-		return this.grid[x][y];
+	static Polyomino polyominoOf( final byte code ) {
+		return code == EMPTY_CODE ? null : Polyomino.byId( (code & 0xFF) - 1 );
 	}
 
 	/**
-	 * Checks if a state is filled.
+	 * Returns the canonical state of a position code.
 	 *
-	 * @param pos Position to get state of.
-	 * @return true if state is filled, false otherwise.
+	 * @param code the code.
+	 * @return the state.
 	 */
-	public final boolean isFilled( final Position pos ) {
-		return this.isFilled( pos.x(), pos.y() );
+	static Piece decode( final byte code ) {
+		return code == EMPTY_CODE ? EMPTY : polyominoOf( code ).getPiece();
 	}
 
 	/**
-	 * Checks if a state is filled.
+	 * Returns the tetromino of a position code.
 	 *
-	 * @param x x-axis-component of position.
-	 * @param y y-axis-component of position.
-	 * @return true if state is filled, false otherwise.
+	 * @param code the code.
+	 * @return the tetromino, or null if empty or not a tetromino.
 	 */
-	public final boolean isFilled( final int x, final int y ) {
-		return this.getState( x, y ) != EMPTY;
+	static Tetromino typeOf( final byte code ) {
+		return code == EMPTY_CODE ? null : polyominoOf( code ).getTetromino();
 	}
 
 	/**
-	 * Sets the state of a position on board to a given state.
+	 * Sets the content hash of row y, keeping the state hash up to date.
 	 *
-	 * @param state The state to set position to.
-	 * @param pos The position to set.
+	 * @param y the row.
+	 * @param hash the new content hash.
 	 */
-	private final void setState( Piece state, final Position pos ) {
-		this.setState( state, pos.x(), pos.y() );
+	private void setRowHash( final int y, final long hash ) {
+		final int slot = this.slots[y];
+		this.stateHash ^= this.rowHashes[slot] * this.rowKeys[y] ^ hash * this.rowKeys[y];
+		this.rowHashes[slot] = hash;
 	}
 
 	/**
-	 * Sets the state of a position on board to a given state.
+	 * Toggles the contributions of rows [from, to) in the state hash,
+	 * done before & after relinking rows to move their contributions.
 	 *
-	 * @param state The state to set position to.
-	 * @param x x-coordinate of the position to set.
-	 * @param y y-coordinate of the position to set.
+	 * @param from the lowest row.
+	 * @param to the row above the highest row.
 	 */
-	private final void setState( Piece state, final int x, final int y ) {
-		this.grid[x][y] = state;
+	private void toggleRowHashes( final int from, final int to ) {
+		for ( int y = from; y < to; y++ ) {
+			this.stateHash ^= this.rowHashes[this.slots[y]] * this.rowKeys[y];
+		}
 	}
 
-	/** An enumeration of all success-states a placement can yield. */
-	public enum PlacementState {
-		OK, ROW_FILLED, OUT_OF_BOUNDS, BAD;
+	/**
+	 * Returns the 64-bit Zobrist hash of the state of the board.<br/>
+	 * The hash covers which tetromino fills each position,
+	 * it is maintained incrementally so this is O(1).
+	 *
+	 * @return the hash.
+	 */
+	public long stateHash() {
+		return this.stateHash;
+	}
 
-		/**
-		 * Returns if the placement failed.
-		 *
-		 * @return true = failure, false = success.
-		 */
-		public boolean isFailed() {
-			return this == OUT_OF_BOUNDS || this == BAD;
+	/**
+	 * Returns true if the given board has the same dimensions &
+	 * the same tetromino at every position as this board.<br/>
+	 * Unequal hashes reject in O(1), otherwise the bitboards & grids are compared.
+	 *
+	 * @param board the board to compare with.
+	 * @return true if the states are equal.
+	 */
+	public boolean stateEquals( Board board ) {
+		if ( this == board ) {
+			return true;
 		}
 
-		/**
-		 * Returns if placement filled a row.
-		 * 
-		 * @return True if ROW_FILLED, otherwise false.
-		 */
-		public boolean isRowFilled() {
-			return this == ROW_FILLED;
+		if ( this.stateHash != board.stateHash || !this.dim.equals( board.dim ) ) {
+			return false;
+		}
+
+		for ( int y = 0; y < this.getHeight(); y++ ) {
+			for ( int w = 0; w < this.words; w++ ) {
+				if ( this.rowWord( y, w ) != board.rowWord( y, w ) ) {
+					return false;
+				}
+			}
+
+			final int base = this.slots[y] * this.getWidth();
+			final int otherBase = board.slots[y] * this.getWidth();
+			for ( int x = 0; x < this.getWidth(); x++ ) {
+				if ( this.cells[base + x] != board.cells[otherBase + x] ) {
+					return false;
+				}
+			}
 		}
+
+		return true;
 	}
 
 	/**
-	 * <p>Attempts to add the body of a piece to the board.<br/>
-	 * Copies the piece blocks into the board grid.<br/>
-	 * Returns {@link PlacementState#OK} for a regular placement, or {@link PlacementState#ROW_FILLED}<br/>
-	 * for a regular placement that causes at least one row to be filled.</p>
-	 *
-	 * <p>Error cases:
-	 * If part of the piece would fall out of bounds, the placement<br/>
-	 * does not change the board at all, and {@link PlacementState#OUT_OF_BOUNDS} is returned.<br/>
-	 * If the placement is "bad" --interfering with existing blocks in the grid --<br/>
-	 * then the placement is halted partially complete and {@link PlacementState#BAD} is returned.<br/>
-	 * An {@link #undo()} will remove the bad placement.</p>
+	 * Takes an immutable snapshot of the board.<br/>
+	 * Rows unchanged since the last snapshot are shared with it, even if they moved,
+	 * & so are chunks of {@link BoardSnapshot#CHUNK_ROWS} rows none of which changed,
+	 * so only the changed rows & their chunks are copied.<br/>
+	 * Complexity: O(maxHeight / CHUNK_ROWS + width) + O(CHUNK_ROWS) per changed chunk
+	 * + O(width) per changed row.
 	 *
-	 * @param piece The piece to place.
-	 * @param Start position of placement.
+	 * @return the snapshot.
 	 */
-	public PlacementState place( final Piece piece, final int x, final int y ) {
-		return this.place( piece, new FinalPosition( x, y ) );
+	public BoardSnapshot snapshot() {
+		final int count = (this.maxHeight + BoardSnapshot.CHUNK_ROWS - 1) >>> BoardSnapshot.CHUNK_SHIFT;
+		final BoardSnapshot.Row[][] chunks = Arrays.copyOf( this.snapshotChunks, count );
+
+		for ( int w = 0; w < this.staleChunks.length && w * WORD_BITS < count; w++ ) {
+			// Chunks above max height stay stale, they are built once reached.
+			long stale = this.staleChunks[w];
+			if ( (w + 1) * WORD_BITS > count ) {
+				stale &= (1L << count) - 1;
+			}
+
+			this.staleChunks[w] ^= stale;
+			for ( ; stale != 0; stale &= stale - 1 ) {
+				final int chunk = w * WORD_BITS + Long.numberOfTrailingZeros( stale );
+				chunks[chunk] = this.snapshotChunk( chunk );
+				this.snapshotChunks[chunk] = chunks[chunk];
+			}
+		}
+
+		return new BoardSnapshot( this.getWidth(), this.getHeight(), chunks, this.maxHeight, this.snapshotEmpty, this.heights.clone(), this.stateHash );
 	}
 
 	/**
-	 * <p>Attempts to add the body of a piece to the board.<br/>
-	 * Copies the piece blocks into the board grid.<br/>
-	 * Returns {@link PlacementState#OK} for a regular placement, or {@link PlacementState#ROW_FILLED}<br/>
-	 * for a regular placement that causes at least one row to be filled.</p>
+	 * Builds a chunk of snapshot rows, sharing the rows unchanged since the last snapshot.
 	 *
-	 * <p>Error cases:
-	 * If part of the piece would fall out of bounds, the placement<br/>
-	 * does not change the board at all, and {@link PlacementState#OUT_OF_BOUNDS} is returned.<br/>
-	 * If the placement is "bad" --interfering with existing blocks in the grid --<br/>
-	 * then the placement is halted partially complete and {@link PlacementState#BAD} is returned.<br/>
-	 * An {@link #undo()} will remove the bad placement.</p>
+	 * @param chunk the chunk.
+	 * @return the rows of chunk.
+	 */
+	private BoardSnapshot.Row[] snapshotChunk( final int chunk ) {
+		final BoardSnapshot.Row[] rows = new BoardSnapshot.Row[BoardSnapshot.CHUNK_ROWS];
+		final int from = chunk << BoardSnapshot.CHUNK_SHIFT;
+
+		for ( int i = 0; i < rows.length; i++ ) {
+			final int y = from + i;
+			if ( y >= this.maxHeight ) {
+				rows[i] = this.snapshotEmpty;
+				continue;
+			}
+
+			final int slot = this.slots[y];
+			if ( this.snapshotRows[slot] == null ) {
+				final int base = slot * this.getWidth();
+				this.snapshotRows[slot] = new BoardSnapshot.Row( Arrays.copyOfRange( this.cells, base, base + this.getWidth() ), this.widths[slot] );
+			}
+
+			rows[i] = this.snapshotRows[slot];
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Marks the snapshot chunks & rooted positions of rows [from, to) as stale.
 	 *
-	 * @param piece The piece to place.
-	 * @param x x-axis component of start position of placement.
-	 * @param y y-axis component of start position of placement.
+	 * @param from the lowest row.
+	 * @param to the row above the highest row.
 	 */
-	public PlacementState place( final Piece piece, final Position startPos ) {
-		/*
-		 * 1) Do a check of all calculated/fixated positions
-		 * to see if they are out of bounds, if they are quit early.
-		 * While doing this we also save these computed positions
-		 * to a list that can be used directly after.
-		 */
-		Position[] fixedPos = piece.getFixedBody( startPos, this.getSize() );
+	private void markStale( final int from, final int to ) {
+		this.rootedValid = Math.min( this.rootedValid, from );
 
-		if ( fixedPos == null ) {
-			return PlacementState.OUT_OF_BOUNDS;
+		for ( int chunk = from >>> BoardSnapshot.CHUNK_SHIFT; chunk << BoardSnapshot.CHUNK_SHIFT < to; chunk++ ) {
+			this.staleChunks[chunk >>> 6] |= 1L << chunk;
 		}
+	}
 
-		/*
-		 * To avoid point of no return we save
-		 * a copy of grid to revert back to.
-		 */
-		this.copy();
+	/**
+	 * Registers a new tracker of the rows & columns that change from now on.<br/>
+	 * The tracker starts out with everything dirty.
+	 * Every change costs O(1) per registered tracker,
+	 * so trackers no longer used should be dropped with {@link #untrack(DirtyTracker)}.
+	 *
+	 * @return the tracker.
+	 */
+	public DirtyTracker trackChanges() {
+		final DirtyTracker tracker = new DirtyTracker( this.getWidth(), this.getHeight() );
 
-		/*
-		 * Now we can safely do operations on grid
-		 * and fall back on gridCopy.
-		 */
-		PlacementState currState = PlacementState.OK;
+		this.trackers = Arrays.copyOf( this.trackers, this.trackers.length + 1 );
+		this.trackers[this.trackers.length - 1] = tracker;
+
+		return tracker;
+	}
+
+	/**
+	 * Unregisters a tracker, it is no longer updated.
+	 *
+	 * @param tracker the tracker, as returned by {@link #trackChanges()}.
+	 */
+	public void untrack( DirtyTracker tracker ) {
+		for ( int i = 0; i < this.trackers.length; i++ ) {
+			if ( this.trackers[i] == tracker ) {
+				DirtyTracker[] trackers = new DirtyTracker[this.trackers.length - 1];
+				System.arraycopy( this.trackers, 0, trackers, 0, i );
+				System.arraycopy( this.trackers, i + 1, trackers, i, trackers.length - i );
+				this.trackers = trackers;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Marks the rows [from, to) & the columns filled in any of them as dirty in all trackers,<br/>
+	 * & their snapshot chunks as stale.<br/>
+	 * Called before rows are emptied or moved & after they are filled.
+	 *
+	 * @param from the lowest row.
+	 * @param to the row above the highest row.
+	 */
+	private void markDirty( final int from, final int to ) {
+		this.markStale( from, to );
+
+		if ( this.trackers.length == 0 ) {
+			return;
+		}
+
+		for ( final DirtyTracker tracker : this.trackers ) {
+			tracker.markRows( from, to );
+		}
+
+		for ( int w = 0; w < this.words; w++ ) {
+			long mask = 0;
+			for ( int y = from; y < to; y++ ) {
+				mask |= this.rowWord( y, w );
+			}
+
+			for ( final DirtyTracker tracker : this.trackers ) {
+				tracker.markColumns( w, mask );
+			}
+		}
+	}
+
+	/**
+	 * Returns the table of where pieces land, kept up to date incrementally
+	 * as column heights change. Created on first use.
+	 *
+	 * @return the landing table.
+	 */
+	public LandingTable getLandings() {
+		if ( this.landings == null ) {
+			this.landings = new LandingTable( this );
+		}
+
+		return this.landings;
+	}
+
+	/**
+	 * Returns the width of board.
+	 *
+	 * @return The width of board.
+	 */
+	public int getWidth() {
+		return this.dim.x();
+	}
+
+	/**
+	 * Returns the height of board.
+	 *
+	 * @return The height of board.
+	 */
+	public int getHeight() {
+		return this.dim.y();
+	}
+
+	/**
+	 * Returns the incrementally maintained features of board,
+	 * such as holes, bumpiness & transitions, for evaluating it.<br/>
+	 * The returned object is live, it always reflects the current state.
+	 *
+	 * @return the features.
+	 */
+	public BoardFeatures getFeatures() {
+		return this.features;
+	}
+
+	/**
+	 * Returns dimensions of board.
+	 *
+	 * @return The boards dimensions.
+	 */
+	public FinalPosition getSize() {
+		return this.dim;
+	}
+
+	/**
+	 * Gets the state of a position on board.<br/>
+	 * Valid states are {@link Tetromino} or {@link #EMPTY} (null).
+	 *
+	 * @param pos Position to get state of.
+	 * @return Retrieved state.
+	 */
+	public final Piece getState( final Position pos ) {
+		return this.getState( pos.x(), pos.y() );
+	}
+
+	/**
+	 * Gets the state of a position on board.<br/>
+	 * Valid states are {@link Tetromino} or {@link #EMPTY} (null).
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return Retrieved state.
+	 */
+	public final Piece getState( final int x, final int y ) {
+		return decode( this.code( x, y ) );
+	}
+
+	/**
+	 * Gets the tetromino at a position on board.<br/>
+	 * Reads a single byte, prefer this over {@link #getState(int, int)} when only the type matters.
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return the tetromino, or null if the position is empty or not of a tetromino.
+	 */
+	public final Tetromino getType( final int x, final int y ) {
+		return typeOf( this.code( x, y ) );
+	}
+
+	/**
+	 * Gets the polyomino at a position on board.<br/>
+	 * Reads a single byte, like {@link #getType(int, int)}.
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return the polyomino, or null if the position is empty.
+	 */
+	public final Polyomino getPolyomino( final int x, final int y ) {
+		return polyominoOf( this.code( x, y ) );
+	}
+
+	/**
+	 * Gets the code of a position on board.
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return the code, see {@link #EMPTY_CODE}.
+	 */
+	private byte code( final int x, final int y ) {
+		return this.cells[this.slots[y] * this.getWidth() + x];
+	}
+
+	/**
+	 * Checks if a state is filled.
+	 *
+	 * @param pos Position to get state of.
+	 * @return true if state is filled, false otherwise.
+	 */
+	public final boolean isFilled( final Position pos ) {
+		return this.isFilled( pos.x(), pos.y() );
+	}
+
+	/**
+	 * Checks if a state is filled.
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return true if state is filled, false otherwise.
+	 */
+	public final boolean isFilled( final int x, final int y ) {
+		// Shifts in java are mod 64, so x >>> 6 selects word & x selects bit.
+		return (this.rows[this.slots[y] * this.words + (x >>> 6)] >>> x & 1L) != 0;
+	}
+
+	/**
+	 * Sets the state of a position on board to a given state.<br/>
+	 * The change is journaled & the row width is maintained.
+	 *
+	 * @param state The state to set position to.
+	 * @param x x-coordinate of the position to set.
+	 * @param y y-coordinate of the position to set.
+	 */
+	private final void setState( Piece state, final int x, final int y ) {
+		this.setCode( encode( state ), x, y );
+	}
+
+	/**
+	 * Sets the code of a position on board, journaling the change.
+	 *
+	 * @param code The code to set position to.
+	 * @param x x-coordinate of the position to set.
+	 * @param y y-coordinate of the position to set.
+	 */
+	private final void setCode( final byte code, final int x, final int y ) {
+		if ( this.journaling ) {
+			this.journal.push( this.code( x, y ) );
+			this.journal.push( BoardJournal.entry( BoardJournal.CELL, x, y ) );
+		}
+
+		this.writeCode( code, x, y );
+	}
+
+	/**
+	 * Sets the state of a position on board to a given state without journaling.<br/>
+	 * The row width & bitboard is maintained.
+	 *
+	 * @param state The state to set position to.
+	 * @param x x-coordinate of the position to set.
+	 * @param y y-coordinate of the position to set.
+	 */
+	private final void writeCode( final byte code, final int x, final int y ) {
+		final int slot = this.slots[y];
+		final int word = slot * this.words + (x >>> 6);
+		boolean wasFilled = (this.rows[word] >>> x & 1L) != 0;
+
+		final int cell = slot * this.getWidth() + x;
+		if ( this.cells[cell] != code ) {
+			this.markStale( y, y + 1 );
+			for ( final DirtyTracker tracker : this.trackers ) {
+				tracker.mark( x, y );
+			}
+		}
+
+		this.setRowHash( y, this.rowHashes[slot] ^ this.cellKey( this.cells[cell], x ) ^ this.cellKey( code, x ) );
+		this.cells[cell] = code;
+		this.snapshotRows[slot] = null;
+
+		if ( code == EMPTY_CODE ) {
+			if ( wasFilled ) {
+				this.features.detachRow( y );
+				this.rows[word] &= ~(1L << x);
+				if ( this.columns != null ) {
+					this.columns[x] &= ~(1L << y);
+				}
+
+				this.setRowWidth( slot, this.widths[slot] - 1 );
+				this.features.attachRow( y );
+				this.features.countCell( x, -1 );
+			}
+		} else if ( !wasFilled ) {
+			this.features.detachRow( y );
+			this.rows[word] |= 1L << x;
+			if ( this.columns != null ) {
+				this.columns[x] |= 1L << y;
+			}
+
+			this.setRowWidth( slot, this.widths[slot] + 1 );
+			this.features.attachRow( y );
+			this.features.countCell( x, 1 );
+		}
+	}
+
+	/**
+	 * Sets the width of a row buffer, keeping count of the filled rows.
+	 *
+	 * @param slot the row buffer.
+	 * @param width the no. of filled positions.
+	 */
+	private void setRowWidth( final int slot, final int width ) {
+		if ( this.widths[slot] == this.getWidth() ) {
+			--this.fullRows;
+		}
+
+		if ( width == this.getWidth() ) {
+			++this.fullRows;
+		}
+
+		this.widths[slot] = width;
+	}
+
+	/** An enumeration of all success-states a placement can yield. */
+	public enum PlacementState {
+		OK, ROW_FILLED, OUT_OF_BOUNDS, BAD;
+
+		/**
+		 * Returns if the placement failed.
+		 *
+		 * @return true = failure, false = success.
+		 */
+		public boolean isFailed() {
+			return this == OUT_OF_BOUNDS || this == BAD;
+		}
+
+		/**
+		 * Returns if placement filled a row.
+		 * 
+		 * @return True if ROW_FILLED, otherwise false.
+		 */
+		public boolean isRowFilled() {
+			return this == ROW_FILLED;
+		}
+	}
+
+	/**
+	 * <p>Checks, without changing the board, what placing the body of a piece would yield.<br/>
+	 * Returns {@link PlacementState#OK} if the piece fits, {@link PlacementState#OUT_OF_BOUNDS}<br/>
+	 * if part of the piece would fall out of bounds and {@link PlacementState#BAD} if it<br/>
+	 * would interfere with existing blocks in the grid.</p>
+	 *
+	 * <p>Complexity: O(piece height) bitboard reads, nothing is written or allocated.</p>
+	 *
+	 * @param piece The piece to check.
+	 * @param x x-axis component of start position of placement.
+	 * @param y y-axis component of start position of placement.
+	 * @return the state the placement would yield, ROW_FILLED is never returned.
+	 */
+	public PlacementState check( final Piece piece, final int x, final int y ) {
+		/*
+		 * The body spans its whole bounding box, so it is in bounds iff the box is.
+		 * Each row of the piece is then tested with a shift & an and against
+		 * the bitboard, a row mask may straddle two words.
+		 */
+		if ( x < 0 || y < 0 || x + piece.getWidth() > this.getWidth() || y + piece.getHeight() > this.getHeight() ) {
+			return PlacementState.OUT_OF_BOUNDS;
+		}
+
+		final long[] masks = piece.getRowMasks();
+		final int w = x >>> 6;
+		final int shift = x & (WORD_BITS - 1);
+		final boolean straddles = shift + piece.getWidth() > WORD_BITS;
+
+		for ( int i = 0; i < masks.length; i++ ) {
+			final int base = this.slots[y + i] * this.words + w;
+
+			if ( (this.rows[base] & masks[i] << shift) != 0
+				|| straddles && (this.rows[base + 1] & masks[i] >>> (WORD_BITS - shift)) != 0 ) {
+				return PlacementState.BAD;
+			}
+		}
+
+		return PlacementState.OK;
+	}
+
+	/**
+	 * Returns true if the body of piece can be placed at (x, y)
+	 * without falling out of bounds or interfering with existing blocks.<br/>
+	 * Nothing is written or allocated.
+	 *
+	 * @param piece The piece to check.
+	 * @param x x-axis component of start position of placement.
+	 * @param y y-axis component of start position of placement.
+	 * @return true if the piece fits.
+	 */
+	public boolean canPlace( final Piece piece, final int x, final int y ) {
+		return this.check( piece, x, y ) == PlacementState.OK;
+	}
+
+	/**
+	 * Returns true if (x, y) is inside the board.
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return true if in bounds.
+	 */
+	public boolean inBounds( final int x, final int y ) {
+		return x >= 0 && x < this.getWidth() && y >= 0 && y < this.getHeight();
+	}
+
+	/**
+	 * <p>Attempts to add the body of a piece to the board.<br/>
+	 * Copies the piece blocks into the board grid.<br/>
+	 * Returns {@link PlacementState#OK} for a regular placement, or {@link PlacementState#ROW_FILLED}<br/>
+	 * for a regular placement that causes at least one row to be filled.</p>
+	 *
+	 * <p>Error cases:
+	 * If part of the piece would fall out of bounds, the placement<br/>
+	 * does not change the board at all, and {@link PlacementState#OUT_OF_BOUNDS} is returned.<br/>
+	 * If the placement is "bad" --interfering with existing blocks in the grid --<br/>
+	 * then the placement is halted partially complete and {@link PlacementState#BAD} is returned.<br/>
+	 * An {@link #undo()} will remove the bad placement.</p>
+	 *
+	 * @param piece The piece to place.
+	 * @param startPos Start position of placement.
+	 */
+	public PlacementState place( final Piece piece, final Position startPos ) {
+		return this.place( piece, startPos.x(), startPos.y() );
+	}
+
+	/**
+	 * <p>Attempts to add the body of a piece to the board.<br/>
+	 * Copies the piece blocks into the board grid.<br/>
+	 * Returns {@link PlacementState#OK} for a regular placement, or {@link PlacementState#ROW_FILLED}<br/>
+	 * for a regular placement that causes at least one row to be filled.</p>
+	 *
+	 * <p>Error cases:
+	 * If part of the piece would fall out of bounds, the placement<br/>
+	 * does not change the board at all, and {@link PlacementState#OUT_OF_BOUNDS} is returned.<br/>
+	 * If the placement is "bad" --interfering with existing blocks in the grid --<br/>
+	 * then the placement is halted partially complete and {@link PlacementState#BAD} is returned.<br/>
+	 * An {@link #undo()} will remove the bad placement.</p>
+	 *
+	 * <p>Use {@link #check(Piece, int, int)} first to avoid ever writing a bad placement.</p>
+	 *
+	 * @param piece The piece to place.
+	 * @param x x-axis component of start position of placement.
+	 * @param y y-axis component of start position of placement.
+	 */
+	public PlacementState place( final Piece piece, final int x, final int y ) {
+		final Position[] body = piece.getBody();
+
+		/*
+		 * 1) Do a check of all positions offset by (x, y)
+		 * to see if they are out of bounds, if they are quit early.
+		 */
+		for ( final Position pos : body ) {
+			if ( !this.inBounds( x + pos.x(), y + pos.y() ) ) {
+				return PlacementState.OUT_OF_BOUNDS;
+			}
+		}
+
+		this.ensureRows( y + piece.getHeight() );
+
+		/*
+		 * To avoid point of no return we start
+		 * a fresh journal to revert back with.
+		 */
+		this.begin();
+
+		/*
+		 * Now we can safely do operations on grid
+		 * and fall back on the journal.
+		 */
+		PlacementState currState = PlacementState.OK;
+
+		// Place all offset positions.
+		for ( final Position pos : body ) {
+			final int cx = x + pos.x(),
+					  cy = y + pos.y();
+
+			if ( this.isFilled( cx, cy ) ) {
+				// Placement is bad, partially complete.
+				currState = PlacementState.BAD;
+				break;
+			}
+
+			this.setState( piece, cx, cy );
+			this.updateMax( cx, cy );
+
+			if ( this.canFillRow( cy ) ) {
+				// Placement results in a filled row, yay!
+				currState = PlacementState.ROW_FILLED;
+			}
+		}
+
+		if ( currState != PlacementState.BAD ) {
+			this.sanityCheck();
+		}
+
+		return currState;
+	}
+
+	/**
+	 * Updates max heights & widths n stuff when a position gets filled.
+	 *
+	 * @param x the x that will be filled.
+	 * @param y the y that will be filled.
+	 */
+	private void updateMax( int x, int y ) {
+		if ( ++y > this.heights[x] ) {
+			this.setColumnHeight( x, this.tryMaxHeight( y ) );
+		}
+	}
+
+	/**
+	 * Sets the height of column x, journaling the change.
+	 *
+	 * @param x the column.
+	 * @param height the new height.
+	 */
+	private void setColumnHeight( int x, int height ) {
+		if ( this.journaling ) {
+			this.journal.push( BoardJournal.entry( BoardJournal.HEIGHT, x, this.heights[x] ) );
+		}
+
+		this.writeColumnHeight( x, height );
+	}
+
+	/**
+	 * Sets the height of column x without journaling, keeping features up to date.
+	 *
+	 * @param x the column.
+	 * @param height the new height.
+	 */
+	private void writeColumnHeight( int x, int height ) {
+		int old = this.heights[x];
+		this.heights[x] = height;
+		this.features.heightChanged( x, old );
+
+		if ( this.landings != null ) {
+			this.landings.invalidate( x );
+		}
+	}
+
+	/**
+	 * Sets the max height, journaling the change.
+	 *
+	 * @param height the new max height.
+	 */
+	private void setMaxHeight( int height ) {
+		if ( this.journaling ) {
+			this.journal.push( BoardJournal.entry( BoardJournal.MAX, 0, this.maxHeight ) );
+		}
+
+		this.maxHeight = height;
+	}
+
+	/**
+	 * Tries a new max height if more than current max height.
+	 *
+	 * @param height the new height max to try.
+	 */
+	private int tryMaxHeight( int height ) {
+		if ( height > this.maxHeight ) {
+			this.setMaxHeight( height );
+		}
+
+		return height;
+	}
+
+	/**
+	 * Starts a new undo step, any earlier uncommitted changes
+	 * become irreversible by {@link #undo()}.<br/>
+	 * Unless savepoints need it, the journal starts from a clean slate.
+	 */
+	private void begin() {
+		if ( this.markCount == 0 ) {
+			this.journal.clear();
+		}
+
+		this.undoPoint = this.journal.size();
+		this.committed = false;
+		this.updateJournaling();
+	}
+
+	/**
+	 * Updates whether or not changes need to be journaled.
+	 */
+	private void updateJournaling() {
+		this.journaling = !this.committed || this.markCount > 0;
+	}
+
+	/**
+	 * Can row given by y-coordinate be filled?
+	 *
+	 * @param y the row no. (y-coordinate)
+	 * @return true if it can be cleared, false otherwise.
+	 */
+	private boolean canFillRow( final int y ) {
+		return this.getRowWidth( y ) == this.getWidth();
+	}
+
+	/**
+	 * Deletes rows that are filled all the
+	 * way across, moving things above down.
+	 *
+	 * @return Amount of rows cleared, 0 if none.
+	 */
+	public int clearRows() {
+		// Nothing to scan for, whatever the height of board.
+		if ( this.fullRows == 0 ) {
+			return 0;
+		}
+
+		int filledRows = 0;
+
+		switch ( this.clearMode ) {
+		case STANDARD:
+			filledRows = this.clearStandard();
+			break;
+
+		case CASCADE:
+		case TETROMINO_CASCADE:
+			filledRows = this.clearCascade();
+			break;
+
+		default:
+			throw new AssertionError( "ShouldNotHappenException" );
+		}
+
+		this.sanityCheck();
+
+		return filledRows;
+	}
+
+	/**
+	 * Pushes garbage rows in from the bottom, lifting the stack up.<br/>
+	 * Every position of a garbage row is filled with state, except the hole column.<br/>
+	 * The change is journaled like a placement or clear,
+	 * so it is reverted by {@link #undo()} or {@link #rollbackTo(int)} when uncommitted.
+	 *
+	 * <p>Complexity: O(maxHeight) + O(width) per garbage row, no cells of the stack are copied.</p>
+	 *
+	 * @param count the no. of garbage rows to push.
+	 * @param hole the column left empty in every garbage row.
+	 * @param state the state to fill the garbage with.
+	 * @return false if the stack would be lifted out of board, the board is then unchanged.
+	 */
+	public boolean addGarbage( final int count, final int hole, final Piece state ) {
+		Preconditions.checkArgument( count >= 0, "Negative garbage row count: %s", count );
+		Preconditions.checkElementIndex( hole, this.getWidth(), "hole" );
+		Preconditions.checkNotNull( state );
+
+		final int top = this.maxHeight;
+		if ( top + count > this.getHeight() ) {
+			return false;
+		}
+
+		if ( count == 0 ) {
+			return true;
+		}
+
+		// Link empty buffers in at the bottom, as reverting a clear of the bottom rows does.
+		this.ensureRows( top + count );
+		for ( int i = 0; i < count; i++ ) {
+			this.removedWork[i] = i;
+		}
+
+		this.relinkRows( count, top + count );
+
+		if ( this.journaling ) {
+			this.journal.push( BoardJournal.entry( BoardJournal.LIFT, count, top ) );
+		}
+
+		for ( int y = 0; y < count; y++ ) {
+			this.fillGarbageRow( y, hole, state );
+		}
+
+		// Heights lift arithmetically, the hole column only if it has something above the garbage.
+		int maxHeight = 0;
+		for ( int x = 0; x < this.getWidth(); x++ ) {
+			final int height = this.heights[x];
+			final int lifted = x == hole && height == 0 ? 0 : height + count;
+
+			if ( lifted != height ) {
+				this.setColumnHeight( x, lifted );
+			}
+
+			maxHeight = Math.max( maxHeight, lifted );
+		}
+
+		if ( maxHeight != this.maxHeight ) {
+			this.setMaxHeight( maxHeight );
+		}
+
+		this.sanityCheck();
+
+		return true;
+	}
+
+	/**
+	 * Fills empty row y with garbage without journaling.
+	 *
+	 * @param y the row.
+	 * @param hole the column left empty.
+	 * @param state the state to fill with.
+	 */
+	private void fillGarbageRow( final int y, final int hole, final Piece state ) {
+		this.features.detachRow( y );
+
+		final int slot = this.slots[y];
+		final int base = slot * this.getWidth();
+		final byte code = encode( state );
+
+		long hash = 0;
+		for ( int x = 0; x < this.getWidth(); x++ ) {
+			if ( x != hole ) {
+				this.cells[base + x] = code;
+				hash ^= this.cellKey( code, x );
+			}
+		}
+
+		for ( int w = 0; w < this.words; w++ ) {
+			this.rows[slot * this.words + w] = this.columnMask( w );
+		}
+
+		this.rows[slot * this.words + (hole >>> 6)] &= ~(1L << hole);
+		this.setRowWidth( slot, this.getWidth() - 1 );
+		this.snapshotRows[slot] = null;
+		this.setRowHash( y, hash );
+		this.maskColumns( y, true );
+		this.markDirty( y, y + 1 );
+
+		this.features.countRow( y, 1 );
+		this.features.attachRow( y );
+	}
+
+	/**
+	 * Reverts a LIFT: empties the garbage rows & unlinks them,
+	 * moving the stack back down.
+	 *
+	 * @param count the no. of garbage rows.
+	 * @param top the top row before the lift.
+	 */
+	private void revertLift( final int count, final int top ) {
+		for ( int y = 0; y < count; y++ ) {
+			this.emptyRow( y );
+			this.removedWork[y] = y;
+		}
+
+		this.unlinkRows( count, top + count );
+	}
+
+	/**
+	 * Uses the cascade clearing methods: filled rows are emptied
+	 * & every segment left floating falls as far as it can,
+	 * which may fill more rows that are then cleared in turn.
+	 *
+	 * @return the amount of filled rows, over all chained clears.
+	 */
+	private int clearCascade() {
+		/*
+		 * Complexity: O(width) per emptied row + O(positions of the affected segments) per chain step.
+		 * - Only segments touching an emptied row can lose their hold,
+		 * 		they may reach both above & below it. Whatever rests on them,
+		 * 		directly or not, may fall too. Those segments are labeled
+		 * 		by flooding, the rest of the stack still rests & is never visited.
+		 * 		The stack is taken to rest before the clear, as it does after
+		 * 		every lock & every cascade.
+		 * - Sticky segments below the emptied rows usually reach the floor
+		 * 		through the whole stack below. Flooding stops as soon as it
+		 * 		touches a rooted position, see isRooted(), so only the part
+		 * 		hanging from the emptied rows is visited. Rooted positions are
+		 * 		kept per row & only recomputed above the lowest changed row.
+		 * - Labeling & settling works on the bitboard & flat int arrays,
+		 * 		floating segments fall their whole distance in one move.
+		 * - Only columns whose top position was emptied change height.
+		 * - A chain step can only fill rows that falling positions landed in.
+		 * - All changes go through the journaled primitives, so undo & savepoints hold.
+		 */
+		if ( this.labeler == null ) {
+			this.labeler = this.clearMode == ClearMode.TETROMINO_CASCADE ? new TetrominoSegmentLabeler( this ) : new SegmentLabeler( this );
+		}
+
+		int filledRows = 0;
+
+		// The filled rows are in [from, to).
+		int from = 0;
+		int to = this.maxHeight;
+
+		while ( this.fullRows > 0 ) {
+			int cleared = 0;
+			for ( int y = from; y < to && this.fullRows > 0; y++ ) {
+				if ( this.canFillRow( y ) ) {
+					this.removedWork[cleared++] = y;
+					this.journalRow( y );
+					this.emptyRow( y );
+				}
+			}
+
+			filledRows += cleared;
+
+			// Rows below the lowest emptied row are as before, what is rooted there stays put.
+			if ( this.clearMode == ClearMode.CASCADE && cleared > 0 ) {
+				this.updateRooted( this.removedWork[0] );
+				this.rootedTo = this.removedWork[0];
+			}
+
+			this.labelAffected( cleared );
+			this.rootedTo = 0;
+			this.settle();
+			this.lowerCascadeHeights();
+
+			// Landed positions are the only ones that moved.
+			from = Integer.MAX_VALUE;
+			to = 0;
+			final int count = this.labeler.count();
+			for ( int s = 0; s < count; s++ ) {
+				if ( this.movedWork[s] ) {
+					for ( int i = this.labeler.start( s ); i < this.labeler.end( s ); i++ ) {
+						final int y = this.labeler.position( i ) / this.getWidth();
+						from = Math.min( from, y );
+						to = Math.max( to, y + 1 );
+					}
+				}
+			}
+		}
+
+		return filledRows;
+	}
+
+	/**
+	 * Labels the segments touching the emptied rows in {@link #removedWork}
+	 * & every segment resting on them, directly or not.
+	 *
+	 * @param cleared the no. of emptied rows.
+	 */
+	private void labelAffected( final int cleared ) {
+		final int width = this.getWidth();
+		this.labeler.reset();
+
+		for ( int i = 0; i < cleared; i++ ) {
+			final int y = this.removedWork[i];
+			this.floodRow( y - 1 );
+			this.floodRow( y + 1 );
+		}
+
+		// The count grows as segments on top of labeled ones are found, whatever is on a grounded segment rests.
+		for ( int s = 0; s < this.labeler.count(); s++ ) {
+			if ( this.labeler.isGrounded( s ) ) {
+				continue;
+			}
+
+			for ( int i = this.labeler.start( s ); i < this.labeler.end( s ); i++ ) {
+				final int y = this.labeler.position( i ) / width + 1;
+				if ( y < this.maxHeight ) {
+					this.labeler.flood( this.labeler.position( i ) % width, y );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if filled position (x, y) is known to rest on the floor while
+	 * the segments affected by a sticky {@link ClearMode#CASCADE} step are labeled:
+	 * it's below the emptied rows & held up from below, on the floor or in a run
+	 * of filled positions in its row with a rooted position right below the run.<br/>
+	 * Emptying rows above can't change that, so a {@link SegmentLabeler} stops there.
+	 * Always false in other clear modes & outside of labeling.
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return true if rooted.
+	 */
+	public boolean isRooted( final int x, final int y ) {
+		return y < this.rootedTo && (this.rooted[y * this.words + (x >>> 6)] >>> x & 1L) != 0;
+	}
+
+	/**
+	 * Brings the rooted positions of all rows below to up to date.<br/>
+	 * Complexity: O(words) per row from the lowest row changed since last time.
+	 *
+	 * @param to the row above the highest row.
+	 */
+	private void updateRooted( final int to ) {
+		if ( this.rootedValid >= to ) {
+			return;
+		}
+
+		if ( this.rooted.length < to * this.words ) {
+			this.rooted = Arrays.copyOf( this.rooted, Math.max( to, this.rooted.length / this.words * 2 ) * this.words );
+		}
+
+		for ( int y = this.rootedValid; y < to; y++ ) {
+			final int base = y * this.words;
+			for ( int w = 0; w < this.words; w++ ) {
+				final long filled = this.rowWord( y, w );
+				this.rooted[base + w] = fillRuns( y == 0 ? filled : filled & this.rooted[base - this.words + w], filled );
+			}
+
+			// A run may cross words, carry it up & then down.
+			for ( int w = 1; w < this.words; w++ ) {
+				if ( this.rooted[base + w - 1] < 0 ) {
+					this.rooted[base + w] |= fillRuns( 1L, this.rowWord( y, w ) );
+				}
+			}
+
+			for ( int w = this.words - 2; w >= 0; w-- ) {
+				if ( (this.rooted[base + w + 1] & 1L) != 0 ) {
+					this.rooted[base + w] |= fillRuns( Long.MIN_VALUE, this.rowWord( y, w ) );
+				}
+			}
+		}
+
+		this.rootedValid = to;
+	}
+
+	/**
+	 * Returns the runs of filled bits containing any of the seed bits.<br/>
+	 * The seeds are spread both ways with occluded Kogge-Stone fills.
+	 *
+	 * @param seeds the seed bits, only those that are filled count.
+	 * @param filled the filled bits.
+	 * @return the runs of seeds.
+	 */
+	private static long fillRuns( final long seeds, final long filled ) {
+		long up = seeds & filled;
+		long down = up;
+
+		long p = filled;
+		up |= p & up << 1;
+		p &= p << 1;
+		up |= p & up << 2;
+		p &= p << 2;
+		up |= p & up << 4;
+		p &= p << 4;
+		up |= p & up << 8;
+		p &= p << 8;
+		up |= p & up << 16;
+		p &= p << 16;
+		up |= p & up << 32;
+
+		p = filled;
+		down |= p & down >>> 1;
+		p &= p >>> 1;
+		down |= p & down >>> 2;
+		p &= p >>> 2;
+		down |= p & down >>> 4;
+		p &= p >>> 4;
+		down |= p & down >>> 8;
+		p &= p >>> 8;
+		down |= p & down >>> 16;
+		p &= p >>> 16;
+		down |= p & down >>> 32;
+
+		return up | down;
+	}
+
+	/**
+	 * Labels the segments of all filled positions in row y, if there is such a row.
+	 *
+	 * @param y the row.
+	 */
+	private void floodRow( final int y ) {
+		if ( y < 0 || y >= this.maxHeight ) {
+			return;
+		}
+
+		for ( int w = 0; w < this.words; w++ ) {
+			for ( long word = this.rowWord( y, w ); word != 0; word &= word - 1 ) {
+				this.labeler.flood( w * WORD_BITS + Long.numberOfTrailingZeros( word ), y );
+			}
+		}
+	}
+
+	/**
+	 * Lowers the heights of the columns whose top position was emptied by a cascade step.<br/>
+	 * Positions only ever move down in a cascade, so a column whose top is still filled keeps its height.<br/>
+	 * Complexity: O(width) + O(rows scanned where the top of a column was emptied).
+	 */
+	private void lowerCascadeHeights() {
+		int maxHeight = 0;
+
+		for ( int x = 0; x < this.getWidth(); x++ ) {
+			final int height = this.heights[x];
+
+			int lowered = height;
+			if ( height > 0 && !this.isFilled( x, height - 1 ) ) {
+				if ( this.columns != null ) {
+					lowered = WORD_BITS - Long.numberOfLeadingZeros( this.columns[x] );
+				} else {
+					while ( lowered > 0 && !this.isFilled( x, lowered - 1 ) ) {
+						--lowered;
+					}
+				}
+
+				this.setColumnHeight( x, lowered );
+			}
+
+			maxHeight = Math.max( maxHeight, lowered );
+		}
+
+		if ( maxHeight != this.maxHeight ) {
+			this.setMaxHeight( maxHeight );
+		}
+	}
+
+	/**
+	 * Lets all labeled segments fall until they rest.
+	 */
+	private void settle() {
+		/*
+		 * Gravity acts on all floating segments at once: they fall together
+		 * until one of them lands, so segments interlocking each other,
+		 * such as a C-shaped segment around another one, keep their places
+		 * relative to each other. Whatever landed rests & the rest fall on.
+		 * Every round lands at least one segment.
+		 */
+		if ( this.movedWork.length < this.labeler.count() ) {
+			this.movedWork = new boolean[this.labeler.count() * 2];
+		}
+
+		Arrays.fill( this.movedWork, 0, this.labeler.count(), false );
+		while ( this.ground() > 0 ) {
+			this.dropFloating( this.fallDistance() );
+		}
+	}
+
+	/**
+	 * Decides which labeled segments rest: grounded ones, those on the floor or on an unlabeled
+	 * position, & those on a resting segment, see {@link #restingWork}.
+	 *
+	 * @return the no. of floating segments.
+	 */
+	private int ground() {
+		final int width = this.getWidth();
+		final int count = this.labeler.count();
+
+		if ( this.restingWork.length < count ) {
+			this.restingWork = new boolean[count * 2];
+			this.segmentsWork = new int[count * 2];
+		}
+
+		int queued = 0;
+		for ( int s = 0; s < count; s++ ) {
+			this.restingWork[s] = this.labeler.isGrounded( s );
+			if ( this.restingWork[s] ) {
+				this.segmentsWork[queued++] = s;
+				continue;
+			}
+
+			for ( int i = this.labeler.start( s ); i < this.labeler.end( s ); i++ ) {
+				final int x = this.labeler.position( i ) % width;
+				final int y = this.labeler.position( i ) / width;
+
+				if ( y == 0 || this.isFilled( x, y - 1 ) && this.labeler.segmentAt( x, y - 1 ) < 0 ) {
+					this.restingWork[s] = true;
+					this.segmentsWork[queued++] = s;
+					break;
+				}
+			}
+		}
+
+		// Whatever is on a resting segment rests too.
+		int resting = queued;
+		while ( queued > 0 ) {
+			final int s = this.segmentsWork[--queued];
+
+			for ( int i = this.labeler.start( s ); i < this.labeler.end( s ); i++ ) {
+				final int x = this.labeler.position( i ) % width;
+				final int y = this.labeler.position( i ) / width + 1;
+				final int above = y < this.getHeight() ? this.labeler.segmentAt( x, y ) : -1;
+
+				if ( above >= 0 && !this.restingWork[above] ) {
+					this.restingWork[above] = true;
+					this.segmentsWork[queued++] = above;
+					++resting;
+				}
+			}
+		}
+
+		return count - resting;
+	}
+
+	/**
+	 * Returns true if (x, y) belongs to a floating segment.
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return true if floating.
+	 */
+	private boolean isFloating( final int x, final int y ) {
+		final int s = this.labeler.segmentAt( x, y );
+		return s >= 0 && !this.restingWork[s];
+	}
+
+	/**
+	 * Computes how many rows the floating segments can fall together,
+	 * until the first of them lands.
+	 *
+	 * @return the distance, at least 1.
+	 */
+	private int fallDistance() {
+		final int width = this.getWidth();
+		final int count = this.labeler.count();
+
+		// Falling positions are no obstacle to each other, mask them out.
+		if ( this.columns != null ) {
+			for ( int s = 0; s < count; s++ ) {
+				if ( !this.restingWork[s] ) {
+					for ( int i = this.labeler.start( s ); i < this.labeler.end( s ); i++ ) {
+						this.fallingWork[this.labeler.position( i ) % width] |= 1L << this.labeler.position( i ) / width;
+					}
+				}
+			}
+		}
+
+		int distance = Integer.MAX_VALUE;
+		for ( int s = 0; s < count; s++ ) {
+			if ( this.restingWork[s] ) {
+				continue;
+			}
+
+			// Every position with something else than a falling position below it may land.
+			for ( int i = this.labeler.start( s ); i < this.labeler.end( s ) && distance > 1; i++ ) {
+				final int x = this.labeler.position( i ) % width;
+				final int y = this.labeler.position( i ) / width;
+
+				if ( this.isFloating( x, y - 1 ) ) {
+					continue;
+				}
+
+				int below = y - 1;
+				if ( this.columns != null ) {
+					// The highest filled position below y that doesn't fall along, -1 if none.
+					below = WORD_BITS - 1 - Long.numberOfLeadingZeros( this.columns[x] & ~this.fallingWork[x] & ((1L << y) - 1) );
+				} else {
+					while ( below >= 0 && below >= y - distance && (!this.isFilled( x, below ) || this.isFloating( x, below )) ) {
+						--below;
+					}
+				}
+
+				distance = Math.min( distance, y - below - 1 );
+			}
+		}
+
+		// Leave the work columns clean for next time.
+		if ( this.columns != null ) {
+			Arrays.fill( this.fallingWork, 0L );
+		}
+
+		return distance;
+	}
+
+	/**
+	 * Moves all floating segments down by distance rows, journaling the change.<br/>
+	 * They are lifted off board before being put back, so they may move into each others positions.
+	 *
+	 * @param distance the no. of rows to move down.
+	 */
+	private void dropFloating( final int distance ) {
+		final int width = this.getWidth();
+		final int count = this.labeler.count();
+
+		if ( this.codesWork.length < this.labeler.start( count ) ) {
+			this.codesWork = new byte[this.labeler.start( count ) * 2];
+		}
+
+		int n = 0;
+		for ( int s = 0; s < count; s++ ) {
+			if ( !this.restingWork[s] ) {
+				for ( int i = this.labeler.start( s ); i < this.labeler.end( s ); i++ ) {
+					final int x = this.labeler.position( i ) % width;
+					final int y = this.labeler.position( i ) / width;
+
+					this.codesWork[n++] = this.code( x, y );
+					this.setCode( EMPTY_CODE, x, y );
+				}
+
+				this.labeler.unlabel( s );
+			}
+		}
+
+		n = 0;
+		for ( int s = 0; s < count; s++ ) {
+			if ( !this.restingWork[s] ) {
+				this.labeler.moveDown( s, distance );
+				this.movedWork[s] = true;
+
+				for ( int i = this.labeler.start( s ); i < this.labeler.end( s ); i++ ) {
+					this.setCode( this.codesWork[n++], this.labeler.position( i ) % width, this.labeler.position( i ) / width );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Uses the standard clearing method with no gravity.
+	 *
+	 * @return the amount of filled rows.
+	 */
+	private int clearStandard() {
+		/*
+		 * Complexity: O(maxHeight) + O(width) per filled row.
+		 * - The filled rows are emptied & their buffers are unlinked
+		 * 		from the row index & relinked on top, the rows above
+		 * 		move down by relinking only, no cell is copied.
+		 * - Rows above maxHeight are empty and never need to be visited.
+		 * - Column heights are lowered arithmetically by the no. of
+		 * 		removed rows below them, see lowerHeights.
+		 * - Only the contents of the filled rows are journaled,
+		 * 		the relinking is journaled as a single SHIFT entry
+		 * 		preceded by the removed rows.
+		 */
+		final int top = this.maxHeight;
+
+		int filledRows = 0;
+		for ( int y = 0; y < top; y++ ) {
+			if ( this.canFillRow( y ) ) {
+				this.journalRow( y );
+				this.emptyRow( y );
+				this.removedWork[filledRows++] = y;
+			}
+		}
+
+		if ( filledRows > 0 ) {
+			this.unlinkRows( filledRows, top );
+
+			if ( this.journaling ) {
+				for ( int i = 0; i < filledRows; i++ ) {
+					this.journal.push( this.removedWork[i] );
+				}
+
+				this.journal.push( BoardJournal.entry( BoardJournal.SHIFT, filledRows, top ) );
+			}
+
+			this.lowerHeights( filledRows );
+		}
+
+		return filledRows;
+	}
+
+	/**
+	 * Unlinks the emptied rows in {@link #removedWork} from the row index,
+	 * moving the rows above them down & relinking the buffers on top.
+	 *
+	 * @param removed the no. of removed rows, ascending in removedWork.
+	 * @param top the top row, all rows >= top are empty.
+	 */
+	private void unlinkRows( final int removed, final int top ) {
+		final int from = this.removedWork[0];
+		this.markDirty( from, top );
+
+		this.features.collapseEmptyRows( this.removedWork, removed, 1 );
+		this.toggleRowHashes( from, top );
+
+		int dest = from;
+		int freed = 0;
+		for ( int y = from, i = 0; y < top; y++ ) {
+			if ( i < removed && this.removedWork[i] == y ) {
+				this.slotsWork[freed++] = this.slots[y];
+				++i;
+			} else {
+				this.slots[dest++] = this.slots[y];
+			}
+		}
+
+		System.arraycopy( this.slotsWork, 0, this.slots, dest, freed );
+
+		this.toggleRowHashes( from, top );
+
+		// The removed bits are empty, squeeze them out of the columns from the top down.
+		if ( this.columns != null ) {
+			for ( int x = 0; x < this.getWidth(); x++ ) {
+				long column = this.columns[x];
+				for ( int i = removed - 1; i >= 0; i-- ) {
+					long below = (1L << this.removedWork[i]) - 1;
+					column = column & below | column >>> 1 & ~below;
+				}
+
+				this.columns[x] = column;
+			}
+		}
+	}
+
+	/**
+	 * Relinks the emptied rows in {@link #removedWork} into the row index where
+	 * they were before {@link #unlinkRows(int, int)}, moving the rows above them back up.
+	 *
+	 * @param removed the no. of removed rows, ascending in removedWork.
+	 * @param top the top row before the rows were unlinked.
+	 */
+	private void relinkRows( int removed, final int top ) {
+		final int from = this.removedWork[0];
+
+		this.toggleRowHashes( from, top );
+
+		// The emptied buffers are on top.
+		System.arraycopy( this.slots, top - removed, this.slotsWork, 0, removed );
+
+		/*
+		 * Walk downwards from top: a row that wasn't removed
+		 * comes from y - n(removed rows below y),
+		 * all such sources are below y so nothing is overwritten.
+		 */
+		final int count = removed;
+		for ( int y = top - 1; removed > 0; y-- ) {
+			if ( this.removedWork[removed - 1] == y ) {
+				this.slots[y] = this.slotsWork[--removed];
+			} else {
+				this.slots[y] = this.slots[y - removed];
+			}
+		}
+
+		this.toggleRowHashes( from, top );
+
+		// Insert empty bits into the columns from the bottom up.
+		if ( this.columns != null ) {
+			for ( int x = 0; x < this.getWidth(); x++ ) {
+				long column = this.columns[x];
+				for ( int i = 0; i < count; i++ ) {
+					long below = (1L << this.removedWork[i]) - 1;
+					column = column & below | column << 1 & ~below;
+				}
+
+				this.columns[x] = column;
+			}
+		}
+
+		this.features.collapseEmptyRows( this.removedWork, count, -1 );
+		this.markDirty( from, top );
+	}
+
+	/**
+	 * Lowers the column heights & max height after the
+	 * rows in {@link #removedWork} were unlinked.<br/>
+	 * Complexity: O(width) with column masks, otherwise
+	 * O(width * removed) + O(rows scanned where the top of a column was removed).
+	 *
+	 * @param removed the no. of removed rows, ascending in removedWork.
+	 */
+	private void lowerHeights( final int removed ) {
+		int maxHeight = 0;
+
+		for ( int x = 0; x < this.getWidth(); x++ ) {
+			final int height = this.heights[x];
+
+			final int lowered;
+			if ( this.columns != null ) {
+				// The masks are already collapsed, the top bit is the new height.
+				lowered = WORD_BITS - Long.numberOfLeadingZeros( this.columns[x] );
+			} else {
+				lowered = this.lowerColumn( x, height, removed );
+			}
 
-		// Place all computed positions.
-		for ( final Position pos : fixedPos ) {
-			if ( this.isFilled( pos ) ) {
-				// Placement is bad, partially complete.
-				currState = PlacementState.BAD;
-				break;
+			if ( lowered != height ) {
+				this.setColumnHeight( x, lowered );
 			}
 
-			this.setState( piece, pos );
-			this.updateMax( pos );
+			maxHeight = Math.max( maxHeight, lowered );
+		}
 
-			if ( this.canFillRow( pos.y() ) ) {
-				// Placement results in a filled row, yay!
-				currState = PlacementState.ROW_FILLED;
-			}
+		if ( maxHeight != this.maxHeight ) {
+			this.setMaxHeight( maxHeight );
 		}
+	}
 
-		if ( currState != PlacementState.BAD ) {
-			this.sanityCheck();
+	/**
+	 * Finds the height of a column after the rows in {@link #removedWork} were unlinked,
+	 * without column masks.
+	 *
+	 * @param x the column.
+	 * @param height the height before.
+	 * @param removed the no. of removed rows, ascending in removedWork.
+	 * @return the new height.
+	 */
+	private int lowerColumn( final int x, final int height, final int removed ) {
+		// Removed rows are filled, so every column has at least one below its height.
+		int below = 0;
+		while ( below < removed && this.removedWork[below] < height ) {
+			++below;
 		}
 
-		return currState;
+		// If the top of the column was removed, find the new top.
+		int lowered = height - below;
+		while ( lowered > 0 && !this.isFilled( x, lowered - 1 ) ) {
+			--lowered;
+		}
+
+		return lowered;
 	}
 
 	/**
-	 * Updates max heights & widths n stuff when a position gets filled.
+	 * Journals the contents of row y before it is emptied.
 	 *
-	 * @param pos the position that will be filled.
+	 * @param y the row.
 	 */
-	private void updateMax( Position pos ) {
-		this.updateMax( pos.x(), pos.y() );
+	private void journalRow( final int y ) {
+		if ( !this.journaling ) {
+			return;
+		}
+
+		// The codes are packed 8 to a word.
+		final int base = this.slots[y] * this.getWidth();
+		for ( int x = 0; x < this.getWidth(); x += 8 ) {
+			long packed = 0;
+			for ( int i = Math.min( 8, this.getWidth() - x ) - 1; i >= 0; i-- ) {
+				packed = packed << 8 | this.cells[base + x + i] & 0xFF;
+			}
+
+			this.journal.push( packed );
+		}
+
+		for ( int w = 0; w < this.words; w++ ) {
+			this.journal.push( this.rowWord( y, w ) );
+		}
+
+		this.journal.push( BoardJournal.entry( BoardJournal.ROW, 0, y ) );
 	}
 
 	/**
-	 * Updates max heights & widths n stuff when a position gets filled.
+	 * Restores the contents of a journaled row, the ROW entry must be popped already.
 	 *
-	 * @param x the x that will be filled.
-	 * @param y the y that will be filled.
+	 * @param y the row to restore into.
 	 */
-	private void updateMax( int x, int y ) {
-		this.widths[y] += 1;
+	private void restoreRow( final int y ) {
+		this.features.detachRow( y );
+		this.features.countRow( y, -1 );
+		this.maskColumns( y, false );
+
+		final int slot = this.slots[y];
+
+		int width = 0;
+		for ( int w = this.words - 1; w >= 0; w-- ) {
+			long word = this.journal.pop();
+			this.rows[slot * this.words + w] = word;
+			width += Long.bitCount( word );
+		}
 
-		if ( ++y > this.heights[x] ) {
-			this.heights[x] = this.tryMaxHeight( y );
+		final int base = slot * this.getWidth();
+		long hash = 0;
+		for ( int x = (this.getWidth() - 1) / 8 * 8; x >= 0; x -= 8 ) {
+			long packed = this.journal.pop();
+			for ( int i = 0; i < 8 && x + i < this.getWidth(); i++, packed >>>= 8 ) {
+				this.cells[base + x + i] = (byte) packed;
+				hash ^= this.cellKey( (byte) packed, x + i );
+			}
 		}
+
+		this.setRowWidth( slot, width );
+		this.snapshotRows[slot] = null;
+		this.setRowHash( y, hash );
+		this.maskColumns( y, true );
+		this.markDirty( y, y + 1 );
+
+		this.features.countRow( y, 1 );
+		this.features.attachRow( y );
 	}
 
 	/**
-	 * Tries a new max height if more than current max height.
+	 * Reverts a SHIFT: relinks the removed rows, whose ROW entries
+	 * follow on the journal and restore their contents.
 	 *
-	 * @param height the new height max to try.
+	 * @param removed the no. of removed rows.
+	 * @param top the top row before the shift.
 	 */
-	private int tryMaxHeight( int height ) {
-		if ( height > this.maxHeight ) {
-			this.maxHeight = height;
+	private void revertShift( final int removed, final int top ) {
+		for ( int i = removed - 1; i >= 0; i-- ) {
+			this.removedWork[i] = (int) this.journal.pop();
 		}
 
-		return height;
+		this.relinkRows( removed, top );
 	}
 
 	/**
-	 * Returns an initialized to {@link #EMPTY} grid.
+	 * Empties row y.
 	 *
-	 * @return The initialized grid.
+	 * @param y the row to empty.
 	 */
-	private Piece[][] initializedGrid() {
-		return new Piece[this.getWidth()][this.getHeight()];
+	private void emptyRow( final int y ) {
+		this.markDirty( y, y + 1 );
+		this.features.detachRow( y );
+		this.features.countRow( y, -1 );
+
+		this.maskColumns( y, false );
+
+		final int slot = this.slots[y];
+		Arrays.fill( this.rows, slot * this.words, (slot + 1) * this.words, 0L );
+		Arrays.fill( this.cells, slot * this.getWidth(), (slot + 1) * this.getWidth(), EMPTY_CODE );
+		this.snapshotRows[slot] = null;
+		this.setRowWidth( slot, 0 );
+		this.setRowHash( y, 0 );
+
+		this.features.attachRow( y );
 	}
 
 	/**
-	 * Saves a copy of grid.
+	 * Sets or clears bit y in the column masks of the filled positions of row y.
+	 *
+	 * @param y the row.
+	 * @param filled true to set, false to clear.
 	 */
-	private void copy() {
-		this.gridCopy = this.initializedGrid();
-		for ( int i = 0; i < this.getWidth(); i++ ) {
-			this.gridCopy[i] = this.grid[i].clone();
+	private void maskColumns( final int y, final boolean filled ) {
+		if ( this.columns == null ) {
+			return;
 		}
 
-		this.widthsCopy = new int[this.widths.length];
-		this.heightsCopy = new int[this.heights.length];
-
-		this.copyArr( this.widths, this.widthsCopy );
-		this.copyArr( this.heights, this.heightsCopy );
+		final long bit = 1L << y;
+		for ( int w = 0; w < this.words; w++ ) {
+			for ( long word = this.rowWord( y, w ); word != 0; word &= word - 1 ) {
+				final int x = w * WORD_BITS + Long.numberOfTrailingZeros( word );
+				this.columns[x] = filled ? this.columns[x] | bit : this.columns[x] & ~bit;
+			}
+		}
+	}
 
-		this.maxHeightCopy = this.maxHeight;
+	/**
+	 * Returns the mask of all valid columns in word w of a row.
+	 *
+	 * @param w the word index.
+	 * @return the column mask.
+	 */
+	long columnMask( final int w ) {
+		int bits = this.getWidth() - w * WORD_BITS;
+		return bits >= WORD_BITS ? -1L : (1L << bits) - 1;
 	}
 
 	/**
-	 * Does a copy from src to dest.
+	 * Returns the no. of words per row in the bitboard.
 	 *
-	 * @param src source array.
-	 * @param dest destination array.
+	 * @return the no. of words.
 	 */
-	private void copyArr( int[] src, int[] dest ) {
-		System.arraycopy( src, 0, dest, 0, src.length );
+	int words() {
+		return this.words;
 	}
 
 	/**
-	 * Can row given by y-coordinate be filled?
+	 * Returns word w of row y in the bitboard.
 	 *
-	 * @param y the row no. (y-coordinate)
-	 * @return true if it can be cleared, false otherwise.
+	 * @param y the row.
+	 * @param w the word index.
+	 * @return the word.
 	 */
-	private boolean canFillRow( final int y ) {
-		return this.getRowWidth( y ) == this.getWidth();
+	long rowWord( final int y, final int w ) {
+		return this.rows[this.slots[y] * this.words + w];
 	}
 
 	/**
-	 * Deletes rows that are filled all the
-	 * way across, moving things above down.
+	 * Returns true if the board is completely empty.<br/>
+	 * This is the same as <code>{@link #getMaxHeight()} == 0.</code>
 	 *
-	 * @return Amount of rows cleared, 0 if none.
+	 * @return true if the board is empty.
 	 */
-	public int clearRows() {
-		int filledRows = 0;
+	public boolean isEmpty() {
+		return this.getMaxHeight() == 0;
+	}
 
-		switch ( this.clearMode ) {
-		case STANDARD:
-			filledRows = this.clearStandard();
-			break;
+	/**
+	 * <p>If a {@link #place(Piece, Position)} happens,<br/>
+	 * optionally followed by a {@link #clearRows()}, a subsequent<br/>
+	 * {@link #undo()} reverts the board to its state before the place().</p>
+	 *
+	 * <p>If the conditions for undo() are not met, such as calling<br/>
+	 * {@link #undo()} twice in a row, then the second {@link #undo()} does nothing.</p>
+	 *
+	 * <p>Savepoints taken after the place() are dropped by an undo().</p>
+	 */
+	public void undo() {
+		if ( this.isCommitted() ) {
+			return;
+		}
 
-		case CASCADE:
-			this.clearSticky();
-			break;
+		this.revertTo( this.undoPoint );
 
-		default:
-			throw new AssertionError( "ShouldNotHappenException" );
+		while ( this.markCount > 0 && this.marks[this.markCount - 1] > this.undoPoint ) {
+			--this.markCount;
 		}
 
-		this.sanityCheck();
+		this.committed = true;
+		this.endJournaling();
 
-		return filledRows;
+		this.sanityCheck();
 	}
 
-	private int clearSticky() {
-		int filledRows = 0;
-
-		// First pass: clear all lines.
-		for ( int y = 0; y < this.getHeight(); y++ ) {
-			if ( this.canFillRow( y ) ) {
-				++filledRows;
-				for ( int x = 0; x < this.getWidth(); x++ ) {
-					this.setState( EMPTY, x, y );
-				}
-			}
+	/**
+	 * Pops the journal in reverse order down to a position, restoring what was before.<br/>
+	 * Complexity: O(popped entries) = O(cells touched).
+	 *
+	 * @param position the journal position to revert to.
+	 */
+	private void revertTo( final int position ) {
+		while ( this.journal.size() > position ) {
+			this.revert( this.journal.pop() );
 		}
+	}
 
-		if ( filledRows == 0 ) {
-			return 0;
+	/**
+	 * Forgets the journal if nothing can revert it anymore.
+	 */
+	private void endJournaling() {
+		if ( this.committed && this.markCount == 0 ) {
+			this.journal.clear();
 		}
 
-		// Second pass: clump to segments.
-		List<Segment> segments = new StickySegmentFinder( this ).find();
-
-		return filledRows;
+		this.updateJournaling();
 	}
 
-	private int clearCascade() {
-		/*
-		 * Complexity: O(height).
-		 * - The row was filled: increment steps to move down/filled-rows.
-		 * - If we've steps to move down & we didn't find a filled row this
-		 * 		time we can move down n(filledRows) rows,
-		 * 		swap copy row y to y - filledRows & clear y.
-		 */
-		int filledRows = 0;
-		for ( int y = 0; y < this.getHeight(); y++ ) {
-			if ( this.canFillRow( y ) ) {
-				++filledRows;
-			} else if ( filledRows > 0 ) {
-				int dest = y - filledRows;
-				this.widths[dest] = this.widths[y];
-				this.widths[y] = 0;
-
-				for ( int x = 0; x < this.getWidth(); x++ ) {
-					this.setState( this.getState( x, y ), x, dest );
-					this.setState( EMPTY, x, y );
-				}
-			}
+	/**
+	 * Takes a savepoint, nested inside any savepoints already taken.<br/>
+	 * Every change from now on can be reverted with {@link #rollbackTo(int)}
+	 * until the savepoint is released with {@link #release(int)}.
+	 *
+	 * @return the savepoint.
+	 */
+	public int mark() {
+		if ( this.markCount == this.marks.length ) {
+			this.marks = Arrays.copyOf( this.marks, this.markCount << 1 );
 		}
 
-		// Recalculate column heights & max height.
-		if ( filledRows > 0 ) {
-			this.maxHeight = 0;
-			for ( int x = 0; x < this.heights.length; x++ ) {
-				this.heights[x] = this.tryMaxHeight( this.computeColHeight( x ) );
-			}
-		}
+		this.marks[this.markCount] = this.journal.size();
+		this.journaling = true;
 
-		return filledRows;
+		return this.markCount++;
 	}
 
-
 	/**
-	 * Uses the standard clearing method with no gravity.
+	 * Reverts all changes made after a savepoint was taken.<br/>
+	 * Savepoints nested inside it are released, the savepoint itself is kept.<br/>
+	 * Complexity: O(cells changed after savepoint).
 	 *
-	 * @return the amount of filled rows.
+	 * @param mark the savepoint, as returned by {@link #mark()}.
+	 * @throws IllegalArgumentException if mark is not a live savepoint.
 	 */
-	private int clearStandard() {
-		/*
-		 * Complexity: O(height).
-		 * - The row was filled: increment steps to move down/filled-rows.
-		 * - If we've steps to move down & we didn't find a filled row this
-		 * 		time we can move down n(filledRows) rows,
-		 * 		swap copy row y to y - filledRows & clear y.
-		 */
-		int filledRows = 0;
-		for ( int y = 0; y < this.getHeight(); y++ ) {
-			if ( this.canFillRow( y ) ) {
-				++filledRows;
-			} else if ( filledRows > 0 ) {
-				int dest = y - filledRows;
-				this.widths[dest] = this.widths[y];
-				this.widths[y] = 0;
-
-				for ( int x = 0; x < this.getWidth(); x++ ) {
-					this.setState( this.getState( x, y ), x, dest );
-					this.setState( EMPTY, x, y );
-				}
-			}
-		}
+	public void rollbackTo( final int mark ) {
+		Preconditions.checkArgument( mark >= 0 && mark < this.markCount, "Not a live savepoint: %s", mark );
 
-		// Recalculate column heights & max height.
-		if ( filledRows > 0 ) {
-			this.maxHeight = 0;
-			for ( int x = 0; x < this.heights.length; x++ ) {
-				this.heights[x] = this.tryMaxHeight( this.computeColHeight( x ) );
-			}
+		int position = this.marks[mark];
+		this.revertTo( position );
+		this.markCount = mark + 1;
+
+		// A place() made after the savepoint is reverted too.
+		if ( this.undoPoint >= position ) {
+			this.committed = true;
 		}
 
-		return filledRows;
-	}
+		this.updateJournaling();
 
+		this.sanityCheck();
+	}
 
 	/**
-	 * Returns true if the board is completely empty.<br/>
-	 * This is the same as <code>{@link #getMaxHeight()} == 0.</code>
+	 * Releases a savepoint and all savepoints nested inside it.<br/>
+	 * Changes made after it are kept, but can no longer be rolled back to it.
 	 *
-	 * @return true if the board is empty.
+	 * @param mark the savepoint, as returned by {@link #mark()}.
+	 * @throws IllegalArgumentException if mark is not a live savepoint.
 	 */
-	public boolean isEmpty() {
-		return this.getMaxHeight() == 0;
+	public void release( final int mark ) {
+		Preconditions.checkArgument( mark >= 0 && mark < this.markCount, "Not a live savepoint: %s", mark );
+
+		this.markCount = mark;
+		this.endJournaling();
 	}
 
 	/**
-	 * <p>If a {@link #place(Piece, Position)} happens,<br/>
-	 * optionally followed by a {@link #clearRows()}, a subsequent<br/>
-	 * {@link #undo()} reverts the board to its state before the place().</p>
+	 * Reverts a single journal entry.
 	 *
-	 * <p>If the conditions for undo() are not met, such as calling<br/>
-	 * {@link #undo()} twice in a row, then the second {@link #undo()} does nothing.</p>
+	 * @param entry the entry to revert.
 	 */
-	public void undo() {
-		if ( this.isCommitted() ) {
-			return;
-		}
+	private void revert( final long entry ) {
+		switch ( BoardJournal.op( entry ) ) {
+		case BoardJournal.CELL:
+			this.writeCode( (byte) this.journal.pop(), BoardJournal.x( entry ), BoardJournal.y( entry ) );
+			break;
+
+		case BoardJournal.HEIGHT:
+			this.writeColumnHeight( BoardJournal.x( entry ), BoardJournal.y( entry ) );
+			break;
 
-		// Let grid point to where gridCopy was, and clear gridCopy reference.
-		this.grid = this.gridCopy;
-		this.gridCopy = null;
+		case BoardJournal.MAX:
+			this.maxHeight = BoardJournal.y( entry );
+			break;
 
-		this.widths = this.widthsCopy;
-		this.widthsCopy = null;
+		case BoardJournal.ROW:
+			this.restoreRow( BoardJournal.y( entry ) );
+			break;
 
-		this.heights = this.heightsCopy;
-		this.heightsCopy = null;
+		case BoardJournal.SHIFT:
+			this.revertShift( BoardJournal.x( entry ), BoardJournal.y( entry ) );
+			break;
 
-		this.maxHeight = this.maxHeightCopy;
-		this.maxHeightCopy = 0;
+		case BoardJournal.LIFT:
+			this.revertLift( BoardJournal.x( entry ), BoardJournal.y( entry ) );
+			break;
 
-		this.sanityCheck();
+		default:
+			throw new AssertionError( "ShouldNotHappenException" );
+		}
 	}
 
 	/**
@@ -585,7 +2346,8 @@ public final class Board {
 	 * This means that {@link #undo()} will no longer revert back.
 	 */
 	public void commit() {
-		this.gridCopy = null;
+		this.committed = true;
+		this.endJournaling();
 	}
 
 	/**
@@ -594,7 +2356,7 @@ public final class Board {
 	 * @return true if the board is in a committed state.
 	 */
 	public boolean isCommitted() {
-		return this.gridCopy == null;
+		return this.committed;
 	}
 
 	/**
@@ -610,7 +2372,8 @@ public final class Board {
 	/**
 	 * Given a piece and an x-coordinate, returns the y-value
 	 * where the origin (lower left corner) of the piece would
-	 * come to rest if it were dropped straight down at that x.
+	 * come to rest if it were dropped straight down at that x
+	 * from above the stack.
 	 *
 	 * @param piece The piece to check for.
 	 * @param x The column it would be dropped at.
@@ -618,18 +2381,51 @@ public final class Board {
 	 */
 	public int dropHeight( Piece piece, final int x ) {
 		/*
-		 * Implementation: uses the skirt and
-		 * the column heights to compute this fast.
+		 * Implementation: the piece rests where one of its skirt
+		 * positions rests on top of its column, the skirt is
+		 * precomputed per rotation by the piece.
 		 *
 		 * Complexity: O(skirt length).
 		 */
+		final int[] skirt = piece.getSkirt();
+
 		int height = 0;
-		for ( int i = x; i < x + piece.getSkirt().length; i++ ) {
-			height = Math.max( this.getColumnHeight( i ), height );
+		for ( int i = 0; i < skirt.length; i++ ) {
+			height = Math.max( this.heights[x + i] - skirt[i], height );
 		}
+
 		return height;
 	}
 
+	/**
+	 * Returns the y position the piece at (x, fromY) lands on when dropped straight down.<br/>
+	 * Unlike {@link #dropHeight(Piece, int)}, the piece may start below the top of its columns,
+	 * such as under an overhang, and never moves up.
+	 *
+	 * <p>Complexity: O(skirt length) when the piece is above its columns,
+	 * otherwise O(rows fallen * piece size).</p>
+	 *
+	 * @param piece the piece.
+	 * @param x the x position of piece.
+	 * @param fromY the y position the piece falls from, where it must fit.
+	 * @return the y position it lands on.
+	 */
+	public int dropHeight( Piece piece, final int x, final int fromY ) {
+		final int height = this.dropHeight( piece, x );
+
+		// Above all its columns, nothing is in the way down to the skirt landing.
+		if ( fromY >= height ) {
+			return height;
+		}
+
+		int y = fromY;
+		while ( y > 0 && this.canPlace( piece, x, y - 1 ) ) {
+			--y;
+		}
+
+		return y;
+	}
+
 	/**
 	 * Returns the height of the given column,<br/>
 	 * which is the y-value of the highest block + 1.<br/>
@@ -649,7 +2445,7 @@ public final class Board {
 	 * @return The number of filled blocks in row y.
 	 */
 	public int getRowWidth( final int y ) {
-		return this.widths[y];
+		return this.widths[this.slots[y]];
 	}
 
 	/**
@@ -685,34 +2481,178 @@ public final class Board {
 	}
 
 	/**
-	 * Performs sanity check on all redundancies of board (widths, heights, maxHeight, topSpace).
+	 * Performs sanity check on all redundancies of board (widths, heights, maxHeight, topSpace),
+	 * as thoroughly as the sanity level says.
 	 */
 	private void sanityCheck() {
-		if ( !DEBUG ) {
+		switch ( this.sanityLevel ) {
+		case OFF:
 			return;
+
+		case SAMPLED:
+			if ( ++this.uncheckedMutations < this.sanityInterval ) {
+				return;
+			}
+
+			this.uncheckedMutations = 0;
+			this.checkChangedSanity();
+			return;
+
+		case FULL:
+			break;
+
+		default:
+			throw new AssertionError( "ShouldNotHappenException" );
+		}
+
+		this.checkSanity();
+	}
+
+	/**
+	 * Performs a sanity check of the rows changed since the last one, as done in {@link SanityLevel#SAMPLED}.<br/>
+	 * The changed rows are checked as in {@link #checkSanity()}, & so are the column heights
+	 * against them & max height, but not the counts & hashes summed over all rows.<br/>
+	 * Complexity: O(width) + O(width) per changed row.
+	 *
+	 * @throws SanityException if an invariant doesn't hold.
+	 */
+	private void checkChangedSanity() {
+		final DirtyTracker tracker = this.sanityTracker;
+		for ( int y = tracker.nextDirtyRow( 0 ), end; y >= 0; y = tracker.nextDirtyRow( end ) ) {
+			end = tracker.nextCleanRow( y );
+			for ( ; y < end; y++ ) {
+				this.checkRowSanity( y );
+			}
+		}
+
+		tracker.ack();
+
+		int maxHeight = 0;
+		for ( int x = 0; x < this.getWidth(); x++ ) {
+			maxHeight = Math.max( maxHeight, this.heights[x] );
+		}
+
+		if ( maxHeight != this.maxHeight ) {
+			throw new SanityException( "Insanity! max height has unmatching [real, stored] values = [" + maxHeight + ", " + this.maxHeight + "]" );
+		}
+	}
+
+	/**
+	 * Checks the buffer link, positions, bitboard, column masks, width & hash of row y,
+	 * & that the column heights agree with it.
+	 *
+	 * @param y the row.
+	 * @return the hash of row y computed from its positions.
+	 * @throws SanityException if an invariant doesn't hold.
+	 */
+	private long checkRowSanity( final int y ) {
+		final int slot = this.slots[y];
+		if ( y >= this.capacity ) {
+			if ( slot != ZERO_BUFFER ) {
+				throw new SanityException( "Insanity! Row y = " + y + " above capacity is linked to buffer = " + slot );
+			}
+		} else if ( slot <= ZERO_BUFFER || slot > this.capacity ) {
+			throw new SanityException( "Insanity! Row y = " + y + " is linked to illegal buffer = " + slot );
+		}
+
+		long rowHash = 0;
+		int nFilled = 0;
+		for ( int x = 0; x < this.getWidth(); x++ ) {
+			rowHash ^= this.cellKey( this.code( x, y ), x );
+
+			final boolean filled = this.isFilled( x, y );
+			if ( filled != (this.getState( x, y ) != EMPTY) ) {
+				throw new SanityException( "Insanity! Position (" + x + ", " + y + ") has unmatching bitboard & grid states" );
+			}
+
+			if ( this.columns != null && filled != ((this.columns[x] >>> y & 1L) != 0) ) {
+				throw new SanityException( "Insanity! Position (" + x + ", " + y + ") has unmatching bitboard & column mask states" );
+			}
+
+			// The top of a column is filled & nothing above it is.
+			if ( filled ? y >= this.heights[x] : y == this.heights[x] - 1 ) {
+				throw new SanityException( "Insanity! Position (" + x + ", " + y + ") disagrees with column height = " + this.heights[x] );
+			}
+
+			if ( filled ) {
+				nFilled++;
+			}
+		}
+
+		if ( (this.rowWord( y, this.words - 1 ) & ~this.columnMask( this.words - 1 )) != 0 ) {
+			throw new SanityException( "Insanity! Row y = " + y + " has bits set outside of board" );
+		}
+
+		if ( this.widths[slot] != nFilled ) {
+			throw new SanityException( "Insanity! Row y = " + y + " has unmatching [real, stored] widths = [" + nFilled + ", " + this.widths[slot] + "]" );
 		}
 
+		if ( this.rowHashes[slot] != rowHash ) {
+			throw new SanityException( "Insanity! Row y = " + y + " has unmatching [real, stored] hashes = [" + rowHash + ", " + this.rowHashes[slot] + "]" );
+		}
+
+		return rowHash;
+	}
+
+	/**
+	 * Performs a full sanity check of all invariants regardless of sanity level,
+	 * comparing all incrementally maintained state to state computed from scratch.<br/>
+	 * Complexity: O(width * height).
+	 *
+	 * @throws SanityException if an invariant doesn't hold.
+	 */
+	public void checkSanity() {
 		// Check array sizes.
 		if ( this.heights.length != this.getWidth() ) {
 			throw new SanityException( "Insanity! Illegal length for heights array = " + this.heights.length + ", should be = " + this.getWidth() );
 		}
 
-		if ( this.widths.length != this.getHeight() ) {
-			throw new SanityException( "Insanity! Illegal length for widths array = " + this.widths.length + ", should be = " + this.getHeight() );
+		if ( this.widths.length != this.capacity + 1 ) {
+			throw new SanityException( "Insanity! Illegal length for widths array = " + this.widths.length + ", should be = " + (this.capacity + 1) );
+		}
+
+		if ( this.maxHeight > this.capacity ) {
+			throw new SanityException( "Insanity! max height = " + this.maxHeight + " is above capacity = " + this.capacity );
+		}
+
+		int fullRows = 0;
+		for ( int y = 0; y < this.capacity; y++ ) {
+			if ( this.canFillRow( y ) ) {
+				++fullRows;
+			}
+		}
+
+		if ( fullRows != this.fullRows ) {
+			throw new SanityException( "Insanity! filled rows have unmatching [real, stored] counts = [" + fullRows + ", " + this.fullRows + "]" );
 		}
 
-		// Width sanity.
+		// Row index sanity: every buffer is linked exactly once, rows above capacity share the zero buffer.
+		boolean[] linked = new boolean[this.capacity + 1];
 		for ( int y = 0; y < this.getHeight(); y++ ) {
-			int nFilled = 0;
-			for ( int x = 0; x < this.getWidth(); x++ ) {
-				if ( this.isFilled( x, y ) ) {
-					nFilled++;
+			final int slot = this.slots[y];
+			if ( y >= this.capacity ) {
+				if ( slot != ZERO_BUFFER ) {
+					throw new SanityException( "Insanity! Row y = " + y + " above capacity is linked to buffer = " + slot );
 				}
+			} else if ( slot <= ZERO_BUFFER || slot > this.capacity || linked[slot] ) {
+				throw new SanityException( "Insanity! Row y = " + y + " is linked to illegal or shared buffer = " + slot );
+			} else {
+				linked[slot] = true;
 			}
+		}
 
-			if ( this.widths[y] != nFilled ) {
-				throw new SanityException( "Insanity! Row y = " + y + " has unmatching [real, stored] widths = [" + nFilled + ", " + this.widths[y] + "]" );
-			}
+		if ( this.widths[ZERO_BUFFER] != 0 || this.rowHashes[ZERO_BUFFER] != 0 ) {
+			throw new SanityException( "Insanity! The zero buffer has been written" );
+		}
+
+		// Width & bitboard & hash sanity.
+		long stateHash = 0;
+		for ( int y = 0; y < this.getHeight(); y++ ) {
+			stateHash ^= this.checkRowSanity( y ) * this.rowKeys[y];
+		}
+
+		if ( this.stateHash != stateHash ) {
+			throw new SanityException( "Insanity! state hash has unmatching [real, stored] values = [" + stateHash + ", " + this.stateHash + "]" );
 		}
 
 		// Height sanity.
@@ -731,6 +2671,8 @@ public final class Board {
 		if ( maxHeight != this.maxHeight ) {
 			throw new SanityException( "Insanity! max height has unmatching [real, stored] values = [" + maxHeight + ", " + this.maxHeight + "]" );
 		}
+
+		this.features.sanityCheck();
 	}
 
 	public static class SanityException extends RuntimeException {
@@ -0,0 +1,390 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+import se.centril.atetria.model.Board.SanityException;
+
+/**
+ * BoardFeatures is the feature vector of a {@link Board} used for evaluating it.
+ *
+ * <p>The features are maintained incrementally by the board as it changes,
+ * including when it is reverted, so reading them is always O(1):</p>
+ * <ul>
+ * 	<li>aggregate height: the sum of all column heights.</li>
+ * 	<li>holes: empty positions below the height of their column.</li>
+ * 	<li>bumpiness: the sum of absolute height differences between adjacent columns.</li>
+ * 	<li>well depth: how far a column is below both of its neighbors, walls are infinitely high.</li>
+ * 	<li>row transitions: filled/empty changes along rows, walls are filled & empty rows have none.</li>
+ * 	<li>column transitions: filled/empty changes along columns, the floor is filled.</li>
+ * </ul>
+ */
+public final class BoardFeatures {
+	/** The board the features are of. */
+	private final Board board;
+
+	/** The number of filled positions in each column. */
+	private final int[] counts;
+
+	/** The well depth of each column. */
+	private final int[] wells;
+
+	private int cells;
+	private int aggregateHeight;
+	private int bumpiness;
+	private int wellSum;
+	private int rowTransitions;
+	private int columnTransitions;
+
+	/**
+	 * Constructs the features of an empty board.
+	 *
+	 * @param board the board.
+	 */
+	BoardFeatures( Board board ) {
+		this.board = board;
+		this.counts = new int[board.getWidth()];
+		this.wells = new int[board.getWidth()];
+
+		// The filled floor against the empty bottom row.
+		this.columnTransitions = board.getWidth();
+	}
+
+	/* --------------------------------
+	 * Public feature interface.
+	 * --------------------------------
+	 */
+
+	/**
+	 * Returns the sum of all column heights.
+	 *
+	 * @return the aggregate height.
+	 */
+	public int getAggregateHeight() {
+		return this.aggregateHeight;
+	}
+
+	/**
+	 * Returns the number of empty positions below the height of their column.
+	 *
+	 * @return the number of holes.
+	 */
+	public int getHoles() {
+		return this.aggregateHeight - this.cells;
+	}
+
+	/**
+	 * Returns the number of empty positions in column x below its height.
+	 *
+	 * @param x the column.
+	 * @return the number of holes in column.
+	 */
+	public int getHoles( final int x ) {
+		return this.board.getColumnHeight( x ) - this.counts[x];
+	}
+
+	/**
+	 * Returns the sum of absolute height differences between adjacent columns.
+	 *
+	 * @return the bumpiness.
+	 */
+	public int getBumpiness() {
+		return this.bumpiness;
+	}
+
+	/**
+	 * Returns how many positions column x is below the lowest of its neighbors.<br/>
+	 * The walls count as infinitely high neighbors.
+	 *
+	 * @param x the column.
+	 * @return the well depth, 0 if column x is no well.
+	 */
+	public int getWellDepth( final int x ) {
+		return this.wells[x];
+	}
+
+	/**
+	 * Returns the sum of the well depths of all columns.
+	 *
+	 * @return the summed well depths.
+	 */
+	public int getWellSum() {
+		return this.wellSum;
+	}
+
+	/**
+	 * Returns the number of filled/empty changes along all rows.<br/>
+	 * Walls count as filled, empty rows count as having no transitions.
+	 *
+	 * @return the row transitions.
+	 */
+	public int getRowTransitions() {
+		return this.rowTransitions;
+	}
+
+	/**
+	 * Returns the number of filled/empty changes along all columns.<br/>
+	 * The floor counts as filled.
+	 *
+	 * @return the column transitions.
+	 */
+	public int getColumnTransitions() {
+		return this.columnTransitions;
+	}
+
+	/* --------------------------------
+	 * Maintenance, called by Board.
+	 * --------------------------------
+	 */
+
+	/**
+	 * Called before row y changes, removes its row & column transitions.
+	 *
+	 * @param y the row.
+	 */
+	void detachRow( final int y ) {
+		this.rowTransitions -= this.rowTransitions( y );
+		this.columnTransitions -= this.pairTransitions( y ) + this.pairTransitions( y + 1 );
+	}
+
+	/**
+	 * Called after row y changed, adds its row & column transitions.
+	 *
+	 * @param y the row.
+	 */
+	void attachRow( final int y ) {
+		this.rowTransitions += this.rowTransitions( y );
+		this.columnTransitions += this.pairTransitions( y ) + this.pairTransitions( y + 1 );
+	}
+
+	/**
+	 * Called when empty rows are unlinked from the board & relinked on top, or back.<br/>
+	 * Only the column transitions at the seams change, the rows must be empty & in place.<br/>
+	 * Complexity: O(rows * words).
+	 *
+	 * @param rows the empty rows, ascending.
+	 * @param count the no. of rows.
+	 * @param sign 1 before unlinking, -1 after relinking them back.
+	 */
+	void collapseEmptyRows( final int[] rows, final int count, final int sign ) {
+		// The empty rows relinked on top pair with the top row.
+		int delta = this.seamTransitions( this.board.getHeight() - 1, this.board.getHeight() );
+
+		// Each run of empty rows is replaced by the pair of rows around it.
+		for ( int i = 0; i < count; ) {
+			final int low = rows[i];
+			int high = low;
+			while ( ++i < count && rows[i] == high + 1 ) {
+				++high;
+			}
+
+			delta += this.seamTransitions( low - 1, high + 1 ) - this.pairTransitions( low ) - this.pairTransitions( high + 1 );
+		}
+
+		this.columnTransitions += sign * delta;
+	}
+
+	/**
+	 * Adds or removes the filled positions of row y to the column counts.
+	 *
+	 * @param y the row.
+	 * @param sign 1 to add, -1 to remove.
+	 */
+	void countRow( final int y, final int sign ) {
+		for ( int w = 0; w < this.board.words(); w++ ) {
+			long word = this.board.rowWord( y, w );
+			this.cells += sign * Long.bitCount( word );
+
+			for ( ; word != 0; word &= word - 1 ) {
+				this.counts[w * Long.SIZE + Long.numberOfTrailingZeros( word )] += sign;
+			}
+		}
+	}
+
+	/**
+	 * Adds or removes a filled position of column x to the column counts.
+	 *
+	 * @param x the column.
+	 * @param sign 1 to add, -1 to remove.
+	 */
+	void countCell( final int x, final int sign ) {
+		this.counts[x] += sign;
+		this.cells += sign;
+	}
+
+	/**
+	 * Called after the height of column x changed.
+	 *
+	 * @param x the column.
+	 * @param old the height before.
+	 */
+	void heightChanged( final int x, final int old ) {
+		final int height = this.board.getColumnHeight( x );
+		this.aggregateHeight += height - old;
+
+		if ( x > 0 ) {
+			int left = this.board.getColumnHeight( x - 1 );
+			this.bumpiness += Math.abs( left - height ) - Math.abs( left - old );
+		}
+
+		if ( x < this.wells.length - 1 ) {
+			int right = this.board.getColumnHeight( x + 1 );
+			this.bumpiness += Math.abs( height - right ) - Math.abs( old - right );
+		}
+
+		// The well depths of x & its neighbors depend on the height of x.
+		for ( int c = Math.max( 0, x - 1 ); c <= Math.min( this.wells.length - 1, x + 1 ); c++ ) {
+			this.wellSum -= this.wells[c];
+			this.wells[c] = this.wellDepth( c );
+			this.wellSum += this.wells[c];
+		}
+	}
+
+	/* --------------------------------
+	 * Computations.
+	 * --------------------------------
+	 */
+
+	/**
+	 * Computes the well depth of column x from the current heights.
+	 *
+	 * @param x the column.
+	 * @return the well depth.
+	 */
+	private int wellDepth( final int x ) {
+		int left = x > 0 ? this.board.getColumnHeight( x - 1 ) : Integer.MAX_VALUE;
+		int right = x < this.wells.length - 1 ? this.board.getColumnHeight( x + 1 ) : Integer.MAX_VALUE;
+		int lowest = Math.min( left, right );
+
+		return lowest == Integer.MAX_VALUE ? 0 : Math.max( 0, lowest - this.board.getColumnHeight( x ) );
+	}
+
+	/**
+	 * Computes the row transitions of row y from the bitboard.
+	 *
+	 * @param y the row.
+	 * @return the row transitions.
+	 */
+	private int rowTransitions( final int y ) {
+		if ( this.board.getRowWidth( y ) == 0 ) {
+			return 0;
+		}
+
+		/*
+		 * Each position is compared with the one on its left,
+		 * the left wall is carried in as a filled position.
+		 */
+		int transitions = 0;
+		long carry = 1;
+		for ( int w = 0; w < this.board.words(); w++ ) {
+			long word = this.board.rowWord( y, w );
+			transitions += Long.bitCount( (word ^ (word << 1 | carry)) & this.board.columnMask( w ) );
+			carry = word >>> (Long.SIZE - 1);
+		}
+
+		// Compare the last position with the right wall.
+		int last = this.board.getWidth() - 1;
+		if ( !this.board.isFilled( last, y ) ) {
+			++transitions;
+		}
+
+		return transitions;
+	}
+
+	/**
+	 * Computes the column transitions between rows y - 1 & y, the floor is filled.
+	 *
+	 * @param y the upper row.
+	 * @return the column transitions, 0 if y is outside of board.
+	 */
+	private int pairTransitions( final int y ) {
+		if ( y >= this.board.getHeight() ) {
+			return 0;
+		}
+
+		int transitions = 0;
+		for ( int w = 0; w < this.board.words(); w++ ) {
+			long below = y == 0 ? this.board.columnMask( w ) : this.board.rowWord( y - 1, w );
+			transitions += Long.bitCount( below ^ this.board.rowWord( y, w ) );
+		}
+
+		return transitions;
+	}
+
+	/**
+	 * Computes the column transitions between rows below & above
+	 * as if they were adjacent, the floor is filled & rows above board are empty.
+	 *
+	 * @param below the lower row, -1 for the floor.
+	 * @param above the upper row.
+	 * @return the column transitions.
+	 */
+	private int seamTransitions( final int below, final int above ) {
+		int transitions = 0;
+		for ( int w = 0; w < this.board.words(); w++ ) {
+			long lower = below < 0 ? this.board.columnMask( w ) : this.board.rowWord( below, w );
+			long upper = above >= this.board.getHeight() ? 0 : this.board.rowWord( above, w );
+			transitions += Long.bitCount( lower ^ upper );
+		}
+
+		return transitions;
+	}
+
+	/**
+	 * Performs sanity check, comparing all features to ones computed from scratch.
+	 *
+	 * @throws SanityException on mismatch.
+	 */
+	void sanityCheck() {
+		int cells = 0, aggregateHeight = 0, bumpiness = 0, wellSum = 0, rowTransitions = 0, columnTransitions = 0;
+
+		for ( int x = 0; x < this.wells.length; x++ ) {
+			int count = 0;
+			for ( int y = 0; y < this.board.getHeight(); y++ ) {
+				if ( this.board.isFilled( x, y ) ) {
+					count++;
+				}
+			}
+
+			if ( count != this.counts[x] ) {
+				throw new SanityException( "Insanity! Column x = " + x + " has unmatching [real, stored] counts = [" + count + ", " + this.counts[x] + "]" );
+			}
+
+			if ( this.wellDepth( x ) != this.wells[x] ) {
+				throw new SanityException( "Insanity! Column x = " + x + " has unmatching [real, stored] well depths = [" + this.wellDepth( x ) + ", " + this.wells[x] + "]" );
+			}
+
+			cells += count;
+			aggregateHeight += this.board.getColumnHeight( x );
+			wellSum += this.wells[x];
+			if ( x > 0 ) {
+				bumpiness += Math.abs( this.board.getColumnHeight( x - 1 ) - this.board.getColumnHeight( x ) );
+			}
+		}
+
+		for ( int y = 0; y < this.board.getHeight(); y++ ) {
+			rowTransitions += this.rowTransitions( y );
+			columnTransitions += this.pairTransitions( y );
+		}
+
+		if ( cells != this.cells || aggregateHeight != this.aggregateHeight || bumpiness != this.bumpiness
+				|| wellSum != this.wellSum || rowTransitions != this.rowTransitions || columnTransitions != this.columnTransitions ) {
+			throw new SanityException( "Insanity! features [cells, aggregate height, bumpiness, well sum, row transitions, column transitions] have unmatching real = ["
+				+ cells + ", " + aggregateHeight + ", " + bumpiness + ", " + wellSum + ", " + rowTransitions + ", " + columnTransitions + "], stored = ["
+				+ this.cells + ", " + this.aggregateHeight + ", " + this.bumpiness + ", " + this.wellSum + ", " + this.rowTransitions + ", " + this.columnTransitions + "]" );
+		}
+	}
+}
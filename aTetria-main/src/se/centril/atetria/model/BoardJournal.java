@@ -0,0 +1,138 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+import java.util.Arrays;
+
+/**
+ * BoardJournal is the undo log of {@link Board}.
+ *
+ * <p>Every change made to a board is recorded as an entry
+ * holding the state before the change. Reverting is done by
+ * popping entries in reverse order and restoring them.</p>
+ *
+ * <p>An entry is a single long packing an op-code, an x and a y value,
+ * see {@link #entry(int, int, int)}. Entries may be preceded by raw
+ * payload words which belong to them.</p>
+ *
+ * <p>The stack only ever grows, so once warmed up,
+ * recording & reverting allocates nothing.</p>
+ */
+final class BoardJournal {
+	/** A cell changed, x & y is the cell, the old code precedes the entry. */
+	public static final int CELL = 1;
+
+	/** A column height changed, x is the column, y the old height. */
+	public static final int HEIGHT = 2;
+
+	/** The max height changed, y is the old max height. */
+	public static final int MAX = 3;
+
+	/** Row y was emptied, its packed codes & words precede the entry. */
+	public static final int ROW = 4;
+
+	/** Rows were removed & the rows above moved down, x is the no. of removed rows, y the old top. */
+	public static final int SHIFT = 5;
+
+	/** Empty rows were linked in at the bottom & the rows above moved up, x is the no. of rows, y the old top. */
+	public static final int LIFT = 6;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] entries = new long[INITIAL_CAPACITY];
+	private int size;
+
+	/**
+	 * Packs an entry.
+	 *
+	 * @param op the op-code.
+	 * @param x the x value, must be in [0, 2^24).
+	 * @param y the y value.
+	 * @return the packed entry.
+	 */
+	public static long entry( final int op, final int x, final int y ) {
+		return (long) y << 32 | (long) x << 8 | op;
+	}
+
+	/**
+	 * Returns the op-code of an entry.
+	 *
+	 * @param entry the entry.
+	 * @return the op-code.
+	 */
+	public static int op( final long entry ) {
+		return (int) entry & 0xFF;
+	}
+
+	/**
+	 * Returns the x value of an entry.
+	 *
+	 * @param entry the entry.
+	 * @return the x value.
+	 */
+	public static int x( final long entry ) {
+		return (int) entry >>> 8;
+	}
+
+	/**
+	 * Returns the y value of an entry.
+	 *
+	 * @param entry the entry.
+	 * @return the y value.
+	 */
+	public static int y( final long entry ) {
+		return (int) (entry >>> 32);
+	}
+
+	/**
+	 * Pushes an entry or payload word.
+	 *
+	 * @param entry the entry.
+	 */
+	public void push( final long entry ) {
+		if ( this.size == this.entries.length ) {
+			this.entries = Arrays.copyOf( this.entries, this.size << 1 );
+		}
+
+		this.entries[this.size++] = entry;
+	}
+
+	/**
+	 * Pops the last pushed entry or payload word.
+	 *
+	 * @return the entry.
+	 */
+	public long pop() {
+		return this.entries[--this.size];
+	}
+
+	/**
+	 * Returns the number of entries & payload words in journal.
+	 *
+	 * @return the size.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Forgets all entries, making them irreversible.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+/**
+ * BoardSnapshot is an immutable view of a {@link Board} at the time it was taken.
+ *
+ * <p>A snapshot is a vector of immutable {@link Row}s, split in chunks of
+ * {@link #CHUNK_ROWS} rows. A row is shared by every snapshot taken while its
+ * contents stay unchanged, even if it moved, & so is a chunk while none of its
+ * rows changed. Taking a snapshot with {@link Board#snapshot()} thus only
+ * copies the chunks & rows that changed since the last one.</p>
+ *
+ * <p>Snapshots may be freely passed to & read from other threads,
+ * such as a render thread, a replay recorder or an AI analyzer.</p>
+ */
+public final class BoardSnapshot {
+	/** Rows are grouped in chunks of 2^CHUNK_SHIFT rows. */
+	static final int CHUNK_SHIFT = 5;
+	static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+
+	/**
+	 * Row is the immutable contents of a row.
+	 */
+	public static final class Row {
+		/** The position codes of the row, one byte per position. */
+		private final byte[] cells;
+		private final int width;
+
+		/**
+		 * Constructs a row, taking ownership of cells.
+		 *
+		 * @param cells the position codes of the row, must not be changed afterwards.
+		 * @param width the no. of filled positions.
+		 */
+		Row( byte[] cells, int width ) {
+			this.cells = cells;
+			this.width = width;
+		}
+
+		/**
+		 * Gets the state of position x in row.
+		 *
+		 * @param x x-axis-component of position.
+		 * @return Retrieved state.
+		 */
+		public Piece getState( final int x ) {
+			return Board.decode( this.cells[x] );
+		}
+
+		/**
+		 * Gets the tetromino at position x in row.
+		 *
+		 * @param x x-axis-component of position.
+		 * @return the tetromino, or null if the position is empty or not of a tetromino.
+		 */
+		public Tetromino getType( final int x ) {
+			return Board.typeOf( this.cells[x] );
+		}
+
+		/**
+		 * Gets the polyomino at position x in row.
+		 *
+		 * @param x x-axis-component of position.
+		 * @return the polyomino, or null if the position is empty.
+		 */
+		public Polyomino getPolyomino( final int x ) {
+			return Board.polyominoOf( this.cells[x] );
+		}
+
+		/**
+		 * Checks if position x in row is filled.
+		 *
+		 * @param x x-axis-component of position.
+		 * @return true if state is filled, false otherwise.
+		 */
+		public boolean isFilled( final int x ) {
+			return this.cells[x] != 0;
+		}
+
+		/**
+		 * Returns the number of filled positions in row.
+		 *
+		 * @return The number of filled positions.
+		 */
+		public int getWidth() {
+			return this.width;
+		}
+	}
+
+	private final int width;
+	private final int height;
+
+	/** Chunks of the rows up to max height, rows above are {@link #empty}. */
+	private final Row[][] chunks;
+	private final int maxHeight;
+	private final Row empty;
+
+	private final int[] heights;
+	private final long stateHash;
+
+	/**
+	 * Constructs a snapshot, taking ownership of chunks & heights.
+	 *
+	 * @param width the width of board.
+	 * @param height the height of board.
+	 * @param chunks the chunks of rows up to max height, must not be changed afterwards.
+	 * @param maxHeight the max column height.
+	 * @param empty the row used for all rows above max height.
+	 * @param heights the column heights.
+	 * @param stateHash the state hash of board.
+	 */
+	BoardSnapshot( int width, int height, Row[][] chunks, int maxHeight, Row empty, int[] heights, long stateHash ) {
+		this.width = width;
+		this.height = height;
+		this.chunks = chunks;
+		this.maxHeight = maxHeight;
+		this.empty = empty;
+		this.heights = heights;
+		this.stateHash = stateHash;
+	}
+
+	/**
+	 * Returns the width of board.
+	 *
+	 * @return The width of board.
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * Returns the height of board.
+	 *
+	 * @return The height of board.
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Returns row y.<br/>
+	 * Rows whose contents are unchanged between snapshots are the same object.
+	 *
+	 * @param y The no. y row.
+	 * @return The row.
+	 */
+	public Row getRow( final int y ) {
+		return y < this.maxHeight ? this.chunks[y >>> CHUNK_SHIFT][y & (CHUNK_ROWS - 1)] : this.empty;
+	}
+
+	/**
+	 * Gets the state of a position.<br/>
+	 * Valid states are {@link Tetromino} or {@link Board#EMPTY} (null).
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return Retrieved state.
+	 */
+	public Piece getState( final int x, final int y ) {
+		return this.getRow( y ).getState( x );
+	}
+
+	/**
+	 * Gets the tetromino at a position.
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return the tetromino, or null if the position is empty.
+	 */
+	public Tetromino getType( final int x, final int y ) {
+		return this.getRow( y ).getType( x );
+	}
+
+	/**
+	 * Checks if a position is filled.
+	 *
+	 * @param x x-axis-component of position.
+	 * @param y y-axis-component of position.
+	 * @return true if state is filled, false otherwise.
+	 */
+	public boolean isFilled( final int x, final int y ) {
+		return this.getRow( y ).isFilled( x );
+	}
+
+	/**
+	 * Returns the height of column x.
+	 *
+	 * @param x The no. x column.
+	 * @return The height of the column x.
+	 */
+	public int getColumnHeight( final int x ) {
+		return this.heights[x];
+	}
+
+	/**
+	 * Returns the max column height.
+	 *
+	 * @return The max column height.
+	 */
+	public int getMaxHeight() {
+		return this.maxHeight;
+	}
+
+	/**
+	 * Returns the state hash of board when the snapshot was taken,
+	 * see {@link Board#stateHash()}.
+	 *
+	 * @return the hash.
+	 */
+	public long stateHash() {
+		return this.stateHash;
+	}
+}
@@ -24,5 +24,18 @@ package se.centril.atetria.model;
  * @since Jun 6, 2013
  */
 public enum ClearMode {
-	STANDARD, CASCADE
+	/** Filled rows are removed & the rows above move down. */
+	STANDARD,
+
+	/**
+	 * Filled rows are emptied & every connected segment falls as far as it can,
+	 * repeated as long as that fills more rows.
+	 */
+	CASCADE,
+
+	/**
+	 * Like {@link #CASCADE}, but only adjacent positions
+	 * of the same tetromino type make up a segment.
+	 */
+	TETROMINO_CASCADE
 }
\ No newline at end of file
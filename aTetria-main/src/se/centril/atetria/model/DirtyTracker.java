@@ -0,0 +1,267 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+import java.util.Arrays;
+
+/**
+ * DirtyTracker records which rows & columns of a {@link Board}
+ * changed since its consumer last acknowledged them with {@link #ack()}.
+ *
+ * <p>Trackers are handed out by {@link Board#trackChanges()}, one per consumer,
+ * & are updated by the board on every change, including reverts.
+ * A consumer such as a renderer, a replay recorder or a network layer
+ * walks the dirty rows as ranges:</p>
+ *
+ * <pre>
+ * for ( int y = tracker.nextDirtyRow( 0 ); y >= 0; y = tracker.nextDirtyRow( end ) ) {
+ * 	int end = tracker.nextCleanRow( y );
+ * 	// rows [y, end) changed.
+ * }
+ * tracker.ack();
+ * </pre>
+ *
+ * <p>Tracking is conservative: a position changed & changed back is still dirty.
+ * A new tracker starts out with everything dirty, as its consumer has seen nothing.
+ * Rows & columns are kept as bitmasks, so marking allocates nothing
+ * & acknowledging only clears the words that were marked.</p>
+ *
+ * <p>A tracker is owned by the thread mutating its board.</p>
+ */
+public final class DirtyTracker {
+	/** Number of bits in a mask word. */
+	private static final int WORD_BITS = 64;
+
+	/** Bit y % 64 of rows[y / 64] is set iff row y is dirty. */
+	private final long[] rows;
+
+	/** Bit x % 64 of columns[x / 64] is set iff column x is dirty. */
+	private final long[] columns;
+
+	private final int height;
+
+	/** The dirty words of rows are within [lowWord, highWord], empty if lowWord > highWord. */
+	private int lowWord;
+	private int highWord;
+
+	/**
+	 * Constructs a tracker of a width * height board with everything dirty.
+	 *
+	 * @param width the width of board.
+	 * @param height the height of board.
+	 */
+	DirtyTracker( final int width, final int height ) {
+		this.height = height;
+		this.rows = new long[(height + WORD_BITS - 1) / WORD_BITS];
+		this.columns = new long[(width + WORD_BITS - 1) / WORD_BITS];
+		this.lowWord = Integer.MAX_VALUE;
+		this.highWord = Integer.MIN_VALUE;
+
+		this.markRows( 0, height );
+		for ( int x = 0; x < width; x++ ) {
+			this.columns[x >>> 6] |= 1L << x;
+		}
+	}
+
+	/**
+	 * Marks position (x, y) as changed.
+	 *
+	 * @param x the column.
+	 * @param y the row.
+	 */
+	void mark( final int x, final int y ) {
+		this.columns[x >>> 6] |= 1L << x;
+		this.rows[y >>> 6] |= 1L << y;
+		this.widen( y >>> 6, y >>> 6 );
+	}
+
+	/**
+	 * Marks rows [from, to) as changed, the columns are marked by {@link #markColumns(int, long)}.
+	 *
+	 * @param from the lowest row.
+	 * @param to the row above the highest row.
+	 */
+	void markRows( final int from, final int to ) {
+		if ( from >= to ) {
+			return;
+		}
+
+		final int first = from >>> 6;
+		final int last = (to - 1) >>> 6;
+
+		for ( int w = first; w <= last; w++ ) {
+			long mask = -1L;
+			if ( w == first ) {
+				mask &= -1L << from;
+			}
+
+			if ( w == last ) {
+				mask &= -1L >>> -to;
+			}
+
+			this.rows[w] |= mask;
+		}
+
+		this.widen( first, last );
+	}
+
+	/**
+	 * Marks the columns set in a column mask word as changed.
+	 *
+	 * @param w the word index, columns [w * 64, w * 64 + 64).
+	 * @param mask the columns of the word to mark.
+	 */
+	void markColumns( final int w, final long mask ) {
+		this.columns[w] |= mask;
+	}
+
+	/**
+	 * Widens the range of dirty row words.
+	 */
+	private void widen( final int first, final int last ) {
+		if ( this.lowWord > this.highWord ) {
+			this.lowWord = first;
+			this.highWord = last;
+		} else {
+			this.lowWord = Math.min( this.lowWord, first );
+			this.highWord = Math.max( this.highWord, last );
+		}
+	}
+
+	/**
+	 * Returns true if anything changed since the last {@link #ack()}.
+	 *
+	 * @return true if dirty.
+	 */
+	public boolean isDirty() {
+		return this.nextDirtyRow( 0 ) >= 0;
+	}
+
+	/**
+	 * Returns true if row y changed since the last {@link #ack()}.
+	 *
+	 * @param y the row.
+	 * @return true if dirty.
+	 */
+	public boolean isRowDirty( final int y ) {
+		return (this.rows[y >>> 6] >>> y & 1L) != 0;
+	}
+
+	/**
+	 * Returns true if column x changed since the last {@link #ack()}.
+	 *
+	 * @param x the column.
+	 * @return true if dirty.
+	 */
+	public boolean isColumnDirty( final int x ) {
+		return (this.columns[x >>> 6] >>> x & 1L) != 0;
+	}
+
+	/**
+	 * Returns the lowest dirty row >= from.
+	 *
+	 * @param from the row to start from.
+	 * @return the row, or -1 if there is none.
+	 */
+	public int nextDirtyRow( final int from ) {
+		if ( from >= this.height ) {
+			return -1;
+		}
+
+		int w = Math.max( from >>> 6, this.lowWord );
+		if ( w > this.highWord ) {
+			return -1;
+		}
+
+		long word = w == from >>> 6 ? this.rows[w] & -1L << from : this.rows[w];
+
+		while ( word == 0 ) {
+			if ( ++w > this.highWord ) {
+				return -1;
+			}
+
+			word = this.rows[w];
+		}
+
+		return w * WORD_BITS + Long.numberOfTrailingZeros( word );
+	}
+
+	/**
+	 * Returns the lowest clean row >= from, the end of a dirty range starting at from.
+	 *
+	 * @param from the row to start from.
+	 * @return the row, or the height of board if there is none.
+	 */
+	public int nextCleanRow( final int from ) {
+		if ( from >= this.height ) {
+			return this.height;
+		}
+
+		int w = from >>> 6;
+		long word = ~this.rows[w] & -1L << from;
+
+		while ( word == 0 ) {
+			if ( ++w == this.rows.length ) {
+				return this.height;
+			}
+
+			word = ~this.rows[w];
+		}
+
+		return Math.min( this.height, w * WORD_BITS + Long.numberOfTrailingZeros( word ) );
+	}
+
+	/**
+	 * Returns the lowest dirty column >= from.
+	 *
+	 * @param from the column to start from.
+	 * @return the column, or -1 if there is none.
+	 */
+	public int nextDirtyColumn( final int from ) {
+		int w = from >>> 6;
+		if ( w >= this.columns.length ) {
+			return -1;
+		}
+
+		long word = this.columns[w] & -1L << from;
+
+		while ( word == 0 ) {
+			if ( ++w == this.columns.length ) {
+				return -1;
+			}
+
+			word = this.columns[w];
+		}
+
+		return w * WORD_BITS + Long.numberOfTrailingZeros( word );
+	}
+
+	/**
+	 * Acknowledges all changes, everything is clean afterwards.<br/>
+	 * Complexity: O(words spanned by dirty rows + width / 64).
+	 */
+	public void ack() {
+		if ( this.lowWord <= this.highWord ) {
+			Arrays.fill( this.rows, this.lowWord, this.highWord + 1, 0L );
+		}
+
+		Arrays.fill( this.columns, 0L );
+
+		this.lowWord = Integer.MAX_VALUE;
+		this.highWord = Integer.MIN_VALUE;
+	}
+}
@@ -31,6 +31,7 @@ import se.centril.atetria.model.command.HorizontalCommand;
 import se.centril.atetria.model.command.PieceCommand;
 import se.centril.atetria.model.command.RotationCommand;
 import se.centril.atetria.model.command.VerticalCommand;
+import se.centril.atetria.model.rotation.SrsRotationSystem;
 
 import com.google.common.base.Preconditions;
 
@@ -137,7 +138,10 @@ public class Game {
 	/** Grid-board of game. */
 	private final Board board;
 
-	/** The current piece in play (if none -> null). */
+	/**
+	 * The current piece in play (if none -> null).<br/>
+	 * It is an overlay on top of the board, and is only written into it when it locks.
+	 */
 	private Piece currentPiece;
 
 	/** The position of currentPiece. */
@@ -154,8 +158,20 @@ public class Game {
 
 	private PieceRetriever retriever;
 
+	/** The latest published frame, swapped atomically after each logic step. */
+	private volatile GameFrame frame;
+
+	/** Snapshot of board, only retaken when the board changes. */
+	private BoardSnapshot boardSnapshot;
+
+	/** Tells whether the board changed since boardSnapshot was taken. */
+	private final DirtyTracker boardTracker;
+
 	private boolean usingWallKick = true;
 
+	/** Decides the offsets tried when rotating. */
+	private RotationSystem rotationSystem = new SrsRotationSystem();
+
 	/* --------------------------------
 	 * Getter public interface.
 	 * --------------------------------
@@ -170,6 +186,37 @@ public class Game {
 		return this.board;
 	}
 
+	/**
+	 * Returns the current (falling) piece in play, or null if there is none.<br/>
+	 * The piece is not part of {@link #getBoard()} until it has landed.
+	 *
+	 * @return the current piece.
+	 */
+	public Piece getCurrentPiece() {
+		return this.currentPiece;
+	}
+
+	/**
+	 * Returns the position of {@link #getCurrentPiece()} on the board, or null if there is none.<br/>
+	 * The position is a copy, it does not follow the piece as it moves.
+	 *
+	 * @return the position of the current piece.
+	 */
+	public synchronized FinalPosition getCurrentPosition() {
+		return this.currentPos == null ? null : new FinalPosition( this.currentPos );
+	}
+
+	/**
+	 * Returns the frame published after the latest logic step.<br/>
+	 * The frame is immutable, so it may be read from any thread,
+	 * such as a render thread, while the game keeps running.
+	 *
+	 * @return the latest frame.
+	 */
+	public GameFrame getFrame() {
+		return this.frame;
+	}
+
 	/**
 	 * Returns the number of elapsed milliseconds (ms) since start of game.
 	 *
@@ -248,6 +295,10 @@ public class Game {
 
 		// Set count of played pieces, initially 0.
 		this.playedPiecesCount = 0;
+
+		// A new tracker is dirty, so the first frame takes the first snapshot.
+		this.boardTracker = board.trackChanges();
+		this.publishFrame();
 	}
 
 	/**
@@ -269,7 +320,8 @@ public class Game {
 	}
 
 	/**
-	 * Sets whether or not to enable wall-kick.
+	 * Sets whether or not to enable wall-kick.<br/>
+	 * Without it, only the unkicked offset of the rotation system is tried.
 	 *
 	 * @param usingWallKick whether or not to enable wall-kick.
 	 */
@@ -277,17 +329,39 @@ public class Game {
 		this.usingWallKick = usingWallKick;
 	}
 
+	/**
+	 * Sets the rotation system deciding where rotated pieces may end up.
+	 *
+	 * @param rotationSystem the RotationSystem to use.
+	 */
+	public void setRotationSystem( RotationSystem rotationSystem ) {
+		this.rotationSystem = Preconditions.checkNotNull( rotationSystem );
+	}
+
 	/* --------------------------------
 	 * Public Logic interface.
 	 * --------------------------------
 	 */
 
+	/*
+	 * The logic interface is synchronized on the game, so tick() may run
+	 * on a logic thread while command() is called from an input thread.
+	 * Anything else changing the board, such as adding garbage, should
+	 * hold the same lock & call refresh() to publish the change.
+	 * The current piece is fitted to such changes before the next step.
+	 */
+
 	/**
 	 * Called when the piece should be commanded {@link VerticalCommand#DOWN} on timer.
 	 */
-	public void tick() {
+	public synchronized void tick() {
 		this.checkGameOver();
-		this.controlPiece( VerticalCommand.DOWN );
+
+		if ( this.fitCurrent() ) {
+			this.controlPiece( VerticalCommand.DOWN );
+		}
+
+		this.publishFrame();
 	}
 
 	/**
@@ -296,14 +370,31 @@ public class Game {
 	 *
 	 * @param command the command.
 	 */
-	public void command( final Command command ) {
+	public synchronized void command( final Command command ) {
 		this.checkGameOver();
 
-		if ( command instanceof PieceCommand ) {
-			this.controlPiece( (PieceCommand) command );
-		} else if ( command instanceof ExtraCommand ) {
-			this.handleExtra( (ExtraCommand) command );
+		if ( this.fitCurrent() ) {
+			if ( command instanceof PieceCommand ) {
+				this.controlPiece( (PieceCommand) command );
+			} else if ( command instanceof ExtraCommand ) {
+				this.handleExtra( (ExtraCommand) command );
+			}
 		}
+
+		this.publishFrame();
+	}
+
+	/**
+	 * Publishes a frame of the current state, for changes to the board
+	 * made outside of {@link #tick()} & {@link #command(Command)}.<br/>
+	 * The current piece is first fitted to the changed board, which may end the game.
+	 */
+	public synchronized void refresh() {
+		if ( this.isActive() ) {
+			this.fitCurrent();
+		}
+
+		this.publishFrame();
 	}
 
 	/* --------------------------------
@@ -311,6 +402,47 @@ public class Game {
 	 * --------------------------------
 	 */
 
+	/**
+	 * Fits the current piece to a board changed outside of the game's logic,
+	 * for example by garbage lifting the stack under it.<br/>
+	 * A piece that overlaps filled positions now is pushed up to the nearest position
+	 * it fits at, if there is none the game is over.
+	 * Nothing is checked unless the board changed since the last frame.
+	 *
+	 * @return false if the game ended.
+	 */
+	private boolean fitCurrent() {
+		if ( this.currentPiece == null || !this.boardTracker.isDirty() ) {
+			return true;
+		}
+
+		final int x = this.currentPos.x();
+		for ( int y = this.currentPos.y(); y + this.currentPiece.getHeight() <= this.board.getHeight(); y++ ) {
+			if ( this.board.canPlace( this.currentPiece, x, y ) ) {
+				this.currentPos.setY( y );
+				return true;
+			}
+		}
+
+		this.currentPiece = null;
+		this.gameOver();
+		return false;
+	}
+
+	/**
+	 * Publishes a frame of the current state, replacing the previous one.<br/>
+	 * The board is only snapshot again if it changed, however it was changed.
+	 */
+	private void publishFrame() {
+		if ( this.boardTracker.isDirty() ) {
+			this.boardSnapshot = this.board.snapshot();
+			this.boardTracker.ack();
+		}
+
+		FinalPosition pos = this.currentPos == null ? null : new FinalPosition( this.currentPos );
+		this.frame = new GameFrame( this.boardSnapshot, this.currentPiece, pos, this.playedPiecesCount, this.isGameOver );
+	}
+
 	/**
 	 * Handles extra commands.
 	 *
@@ -347,25 +479,24 @@ public class Game {
 
 		this.init();
 
-		if ( this.currentPiece != null) {
-			// Remove the piece from its old position.
-			this.board.undo();
+		// The first piece didn't fit, there is nothing to control.
+		if ( this.isGameOver() ) {
+			return;
+		}
+
+		if ( command == VerticalCommand.DROP ) {
+			this.hardDrop();
+			return;
 		}
 
-		// Try out the new position + piece (rolls back if it doesn't work)
+		/*
+		 * Try out the new position + piece, the board is only read,
+		 * the current piece is never in it while falling.
+		 */
 		PlacementState result = this.tryNewPosition( command );
 		boolean failed = result.isFailed();
 
-		if ( failed ) {
-			if ( this.currentPiece != null ) {
-				this.board.place( this.currentPiece, this.currentPos );
-			}
-		}
-
-		if ( result.isRowFilled() ) {
-			// Row clearing is going to happen, notify listeners!
-			//this.pcs.firePropertyChange( "prepareClear", null, null );
-		} else if ( failed && command == VerticalCommand.DOWN && !moved ) {	// it's landed
+		if ( failed && command == VerticalCommand.DOWN && !moved ) {	// it's landed
 			/*
 			 * How to detect when a piece has landed: if this move hits
 			 * something on its DOWN verb, and the previous verb was also DOWN
@@ -373,20 +504,7 @@ public class Game {
 			 * position must be the correct "landed" position, so we're done
 			 * with the falling of this piece.
 			 */
-			int clearedRows = this.board.clearRows();
-			if ( clearedRows > 0 ) {
-				this.clearTime = this.now();
-				// Notify listeners of clear!
-				// this.pcs.firePropertyChange( "clear", 0, clearedRows );
-			}
-
-			if ( this.board.hasOverflow() ) {
-				// The board is too tall, we've lost.
-				this.gameOver();
-			} else {
-				// Otherwise add a new piece and keep playing.
-				this.addNextPiece();
-			}
+			this.lockCurrent();
 		}
 
 		// Note if the player made a successful non-DOWN move --
@@ -394,6 +512,61 @@ public class Game {
 		this.moved = !failed && command != VerticalCommand.DOWN;
 	}
 
+	/**
+	 * Drops the current piece straight down & locks it at once,
+	 * in a single placement without stepping it down row by row.
+	 */
+	private void hardDrop() {
+		// The current position is always a private copy, moving it in place allocates nothing.
+		this.currentPos.setY( this.board.dropHeight( this.currentPiece, this.currentPos.x(), this.currentPos.y() ) );
+		this.moved = false;
+
+		this.lockCurrent();
+	}
+
+	/**
+	 * Writes the landed current piece into the board, clears rows
+	 * and continues with the next piece unless the board has overflowed.
+	 */
+	private void lockCurrent() {
+		/*
+		 * The current piece has only been moved to checked positions
+		 * & is fitted to outside changes, so this placement shouldn't fail.
+		 * Should it anyway, the partial placement is rolled back.
+		 */
+		final int mark = this.board.mark();
+		final PlacementState result = this.board.place( this.currentPiece, this.currentPos );
+		if ( result.isFailed() ) {
+			this.board.rollbackTo( mark );
+			this.board.release( mark );
+			this.currentPiece = null;
+			this.gameOver();
+			return;
+		}
+
+		this.board.release( mark );
+
+		if ( result.isRowFilled() ) {
+			// Row clearing is going to happen, notify listeners!
+			//this.pcs.firePropertyChange( "prepareClear", null, null );
+		}
+
+		int clearedRows = this.board.clearRows();
+		if ( clearedRows > 0 ) {
+			this.clearTime = this.now();
+			// Notify listeners of clear!
+			// this.pcs.firePropertyChange( "clear", 0, clearedRows );
+		}
+
+		if ( this.board.hasOverflow() ) {
+			// The board is too tall, we've lost.
+			this.gameOver();
+		} else {
+			// Otherwise add a new piece and keep playing.
+			this.addNextPiece();
+		}
+	}
+
 	/**
 	 * Does initializations on game start.
 	 *
@@ -421,91 +594,87 @@ public class Game {
 	 * Tries out a new position for the current piece
 	 * based on the given TickCommand.
 	 *
-	 * The board should be in the committed state --
-	 * i.e. the piece should not be in the board at the moment.
-	 * This is necessary so dropHeight() may be called without
-	 * the piece "hitting itself" on the way down.
+	 * The current piece is never in the board while falling,
+	 * so it can't "hit itself" on the way down.<br/>
+	 * {@link VerticalCommand#DROP} is handled by {@link #hardDrop()}
+	 * & rotations by {@link #tryRotation(RotationCommand)}.
 	 */
 	private PlacementState tryNewPosition( PieceCommand command ) {
 		// As a starting point, the new position is the same as the old.
-		Piece newPiece = this.currentPiece;
-		Position newPos = this.currentPos.cpy();
+		int x = this.currentPos.x();
+		int y = this.currentPos.y();
 
 		// Make changes based on the command.
 		if ( command instanceof HorizontalCommand ) {
 			switch ( (HorizontalCommand) command ) {
 			default:
-			case LEFT:	newPos.subX( 1 ); break;
-			case RIGHT: newPos.addX( 1 ); break;
+			case LEFT:	--x; break;
+			case RIGHT: ++x; break;
 			}
 		} else if ( command instanceof VerticalCommand ) {
 			switch ( (VerticalCommand) command ) {
 			default:
-			case DOWN:	newPos.subY( 1 ); break;
-			// NOTE: if the piece were in the board, it would interfere here.
-			case DROP:	newPos.setY( this.board.dropHeight( newPiece, newPos.x() ) ); break;
+			case DOWN:	--y; break;
 			}
 		} else if ( command instanceof RotationCommand ) {
-			/*
-			 * Make the piece appear to rotate about its center.
-			 * We can't just leave it at the same lower-left
-			 * origin as the previous piece.
-			 */
-			newPiece = newPiece.rotate( ((RotationCommand) command) );
-			FinalPosition diff = this.currentPiece.getSize().sub( newPiece.getSize() );
-			newPos.add( diff.x() / 2, diff.y() / 2 );
-
-			this.adjustWallKick( newPos, newPiece );
+			return this.tryRotation( (RotationCommand) command );
 		} else {
 			throw new AssertionError( "ShouldNotHappenException" );
 		}
 
 		// Set to current.
-		return this.setCurrent( newPiece, newPos );
+		return this.setCurrent( this.currentPiece, x, y );
 	}
 
 	/**
-	 * Adjusts for wall kick if enabled.
+	 * Tries to rotate the current piece, testing the offsets
+	 * of the rotation system in order & taking the first that fits.<br/>
+	 * Without wall kick, only the unkicked offset is tested.<br/>
+	 * Complexity: O(kicks * piece height), allocates nothing.
 	 *
-	 * @param pos position to adjust.
-	 * @param piece the piece to adjust.
-	 */
-	private void adjustWallKick( Position pos, Piece piece ) {
-		if ( !this.usingWallKick() ) {
-			return;
+	 * @param direction the direction to rotate in.
+	 * @return the state of the last tested placement.
+	 */
+	private PlacementState tryRotation( RotationCommand direction ) {
+		final Piece rotated = this.currentPiece.rotate( direction );
+		final int[] kicks = this.rotationSystem.kicks( this.currentPiece, direction );
+		final int tries = this.usingWallKick() ? kicks.length : 2;
+		final int x = this.currentPos.x();
+		final int y = this.currentPos.y();
+
+		PlacementState result = null;
+		for ( int i = 0; i < tries; i += 2 ) {
+			result = this.setCurrent( rotated, x + kicks[i], y + kicks[i + 1] );
+			if ( !result.isFailed() ) {
+				break;
+			}
 		}
 
-		int rightPos = pos.x() + piece.getWidth() - 1;
-		if ( rightPos >= this.board.getWidth() ) {
-			do {
-				pos.subX( 1 );
-			} while ( --rightPos >= this.board.getWidth() );
-		} else if ( pos.x() < 0 ) {
-			do {
-				pos.addX( 1 );
-			} while ( pos.x() < 0 );
-		}
+		return result;
 	}
 
 	/**
-	 * Given a piece, tries to install that piece into the board and set it to
-	 * be the current piece. If the placement is not possible, then the
-	 * placement is undone, and the board is not changed. The board should be in
-	 * the committed state when this is called. Returns the same error code as
-	 * {@link Board#place(Piece, Position)}.
+	 * Given a piece, tries to set it to be the current piece at a position.
+	 * The board is never changed, the placement is only checked against it.
+	 * Returns the same error code as {@link Board#check(Piece, int, int)}.
 	 *
 	 * @param piece the piece to place.
-	 * @param pos the position to place piece at.
+	 * @param x the x position to place piece at.
+	 * @param y the y position to place piece at.
 	 * @return the state of placement.
 	 */
-	private PlacementState setCurrent( Piece piece, Position pos ) {
-		PlacementState result = this.board.place( piece, pos );
+	private PlacementState setCurrent( Piece piece, int x, int y ) {
+		PlacementState result = this.board.check( piece, x, y );
 
-		if ( result.isFailed() ) {
-			this.board.undo();
-		} else {
+		if ( !result.isFailed() ) {
 			this.currentPiece = piece;
-			this.currentPos = pos;
+
+			// The position is private to the game, it is moved in place.
+			if ( this.currentPos == null ) {
+				this.currentPos = new MutablePosition( x, y );
+			} else {
+				this.currentPos.set( x, y );
+			}
 		}
 
 		return result;
@@ -547,8 +716,7 @@ public class Game {
 		this.currentPiece = null;
 
 		// Add set piece to be in play, center it at top.
-		FinalPosition diff = this.board.getSize().sub( piece.getSize() );
-		PlacementState result = this.setCurrent( piece, new MutablePosition( diff.x() / 2, diff.y() ) );
+		PlacementState result = this.setCurrent( piece, (this.board.getWidth() - piece.getWidth()) / 2, this.board.getHeight() - piece.getHeight() );
 
 		/*
 		 * This probably never happens, since
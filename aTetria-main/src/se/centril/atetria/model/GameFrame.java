@@ -0,0 +1,101 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+import se.centril.atetria.framework.geom.FinalPosition;
+
+/**
+ * GameFrame is an immutable view of a {@link Game} after a logic step,
+ * everything needed to render it: the board, with column heights,
+ * & the current piece with its position.
+ *
+ * <p>A new frame is published by the game after every step with a single
+ * volatile reference swap, so a render thread reading {@link Game#getFrame()}
+ * always sees a whole step, may keep it for as long as it likes
+ * & never stalls on or tears against the logic thread.<br/>
+ * Frames are cheap: the {@link BoardSnapshot} is shared between them
+ * until the board changes.</p>
+ */
+public final class GameFrame {
+	private final BoardSnapshot board;
+	private final Piece currentPiece;
+	private final FinalPosition currentPos;
+	private final int score;
+	private final boolean gameOver;
+
+	/**
+	 * Constructs a frame.
+	 *
+	 * @param board the snapshot of board.
+	 * @param currentPiece the current piece, or null.
+	 * @param currentPos the position of current piece, or null.
+	 * @param score the score.
+	 * @param gameOver whether or not the game is over.
+	 */
+	GameFrame( BoardSnapshot board, Piece currentPiece, FinalPosition currentPos, int score, boolean gameOver ) {
+		this.board = board;
+		this.currentPiece = currentPiece;
+		this.currentPos = currentPos;
+		this.score = score;
+		this.gameOver = gameOver;
+	}
+
+	/**
+	 * Returns the snapshot of the board, without the current piece.
+	 *
+	 * @return the board snapshot.
+	 */
+	public BoardSnapshot getBoard() {
+		return this.board;
+	}
+
+	/**
+	 * Returns the current (falling) piece, or null if there is none.
+	 *
+	 * @return the current piece.
+	 */
+	public Piece getCurrentPiece() {
+		return this.currentPiece;
+	}
+
+	/**
+	 * Returns the position of {@link #getCurrentPiece()}, or null if there is none.
+	 *
+	 * @return the position of the current piece.
+	 */
+	public FinalPosition getCurrentPosition() {
+		return this.currentPos;
+	}
+
+	/**
+	 * Returns the score: the amount of played pieces.
+	 *
+	 * @return Score.
+	 */
+	public int getScore() {
+		return this.score;
+	}
+
+	/**
+	 * Returns true if the game is over.
+	 *
+	 * @return true if the game is over.
+	 */
+	public boolean isGameOver() {
+		return this.gameOver;
+	}
+}
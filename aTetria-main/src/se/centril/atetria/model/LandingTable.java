@@ -0,0 +1,116 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+import java.util.Arrays;
+
+/**
+ * LandingTable caches where each rotation of each polyomino
+ * lands in each column of a {@link Board}, see {@link Board#dropHeight(Piece, int)}.
+ *
+ * <p>Entries are keyed on (piece id, column), see {@link Piece#getId()},
+ * so any Piece instance of the same rotation shares them.
+ * A landing only depends on the heights of the columns under the piece,
+ * so when the height of a column changes, only the entries of pieces
+ * spanning it are invalidated, the rest of the table stays valid
+ * across {@link Board#place(Piece, int, int)}, {@link Board#clearRows()} & reverts.</p>
+ *
+ * <p>Candidate placements in a search or a ghost piece are thus
+ * resolved by lookup, recomputing only what the last move affected.
+ * The table is retrieved with {@link Board#getLandings()}.</p>
+ */
+public final class LandingTable {
+	/** Number of bits in a valid word. */
+	private static final int WORD_BITS = 64;
+
+	private final Board board;
+
+	/** The number of keys per column: one per distinct rotation, grown as polyominoes are defined. */
+	private int keys;
+
+	/** The number of valid words per column. */
+	private int words;
+
+	/** The widest piece looked up, a column height change invalidates as many columns to its left. */
+	private int maxWidth;
+
+	/** The landing of key k dropped at column x is at landings[x * keys + k]. */
+	private int[] landings;
+
+	/** Bit k % 64 of valid[x * words + k / 64] is set iff the landing of key k at column x is cached. */
+	private long[] valid;
+
+	/**
+	 * Constructs an empty table of a board.
+	 *
+	 * @param board the board.
+	 */
+	LandingTable( Board board ) {
+		this.board = board;
+		this.resize( Piece.idCount() );
+	}
+
+	/**
+	 * Resizes the table to hold a number of keys, dropping all cached landings.
+	 *
+	 * @param keys the number of keys.
+	 */
+	private void resize( final int keys ) {
+		this.keys = keys;
+		this.words = (keys + WORD_BITS - 1) / WORD_BITS;
+		this.landings = new int[this.board.getWidth() * keys];
+		this.valid = new long[this.board.getWidth() * this.words];
+	}
+
+	/**
+	 * Returns the y-value where the origin of piece would come to rest
+	 * if it were dropped straight down at column x from above the stack.<br/>
+	 * Complexity: O(1) if cached, O(skirt length) otherwise.
+	 *
+	 * @param piece the piece.
+	 * @param x the column it would be dropped at.
+	 * @return the y-value where piece would rest if dropped.
+	 */
+	public int landing( Piece piece, final int x ) {
+		final int key = piece.getId();
+		if ( key >= this.keys ) {
+			this.resize( Piece.idCount() );
+		}
+
+		final int index = x * this.keys + key;
+		final int word = x * this.words + (key >>> 6);
+
+		if ( (this.valid[word] >>> key & 1L) == 0 ) {
+			this.maxWidth = Math.max( this.maxWidth, piece.getWidth() );
+			this.landings[index] = this.board.dropHeight( piece, x );
+			this.valid[word] |= 1L << key;
+		}
+
+		return this.landings[index];
+	}
+
+	/**
+	 * Invalidates the landings of all pieces spanning column x,
+	 * called when its height changed.
+	 *
+	 * @param x the column.
+	 */
+	void invalidate( final int x ) {
+		final int from = Math.max( 0, x - this.maxWidth + 1 ) * this.words;
+		Arrays.fill( this.valid, from, (x + 1) * this.words, 0L );
+	}
+}
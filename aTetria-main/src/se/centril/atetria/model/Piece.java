@@ -18,16 +18,12 @@ package se.centril.atetria.model;
 
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 import java.util.NoSuchElementException;
 
 import se.centril.atetria.framework.geom.FinalPosition;
 import se.centril.atetria.framework.geom.Position;
 import se.centril.atetria.model.command.RotationCommand;
 
-import com.google.common.base.Objects;
-import com.google.common.collect.Lists;
-
 /**
  * Piece represents a single piece in the game.
  *
@@ -35,14 +31,16 @@ import com.google.common.collect.Lists;
  * Line, L, L-Mirrored, Z, S, Square, T.</p>
  *
  * <p>It is not possible to directly construct a piece.
- * Instead all users must utilize {@link Piece#getPieces()}
- * which returns a list of predefined Pieces with all
+ * Instead all users should utilize {@link Piece#of(Tetromino)}
+ * which returns a predefined Piece with all
  * rotations pre-computed and linked as a chain.<br />
  * Rotations are accessible with either:
  * {@link #nextRotation()} or {@link #prevRotation()}</p>
  *
  * <p>The basic make-up of a piece is a set of points
- * (a tetromino uses 4 of them).</p>
+ * (a tetromino uses 4 of them), the body of its {@link Polyomino}.
+ * Pieces of any other polyomino, such as pentominoes, are
+ * retrieved from {@link Polyomino#getPiece()}.</p>
  *
  * <p>Each piece has a width and height
  * measured in blocks calculated at construction.</p>
@@ -53,12 +51,15 @@ import com.google.common.collect.Lists;
  * This useful for computing where the piece will land.</p>
  */
 public final class Piece {
-	/** The preferred number of position/block elements used. */
-	public final static int MAX_POSITION_COUNT = 4;
+	/** The maximum number of rotations a piece can have, one per quadrant of the unit-circle. */
+	public final static int MAX_ORIENTATION = 4;
 
-	/** The Tetromino type of piece. */
+	/** The Tetromino type of piece, null if it isn't a tetromino. */
 	private final Tetromino type;
 
+	/** The shape of piece. */
+	private final Polyomino polyomino;
+
 	/** The body of the piece containing all positions of the component blocks that it is made of. */
 	private final FinalPosition[] body;
 
@@ -71,12 +72,18 @@ public final class Piece {
 	/** The dimensions of the piece. */
 	private final FinalPosition dim;
 
+	/** The body packed per row, bit x of rowMasks[y] is set iff (x, y) is in the body. */
+	private final long[] rowMasks;
+
 	/** The next rotation in line (CCW, 90 deg left). */
 	private Piece next;
 
 	/** The previous rotation in line (CW, 90 deg right) */
 	private Piece prev;
 
+	/** The index of this rotation in the CCW chain, 0 for the piece it was constructed as. */
+	private int rotation;
+
 	/** Stores the maximum orientation value. */
 	private MaxOrientation maxOrientation;
 
@@ -116,12 +123,77 @@ public final class Piece {
 	 */
 
 	/**
-	 * Constructs a Piece given the tetromino it represents.
+	 * Returns the interned piece of a tetromino, shared by everyone.<br/>
+	 * Pieces & their rotations are immutable, so spawning a piece
+	 * this way allocates nothing, unlike {@link #Piece(Tetromino)}.
+	 *
+	 * @param tetromino the tetromino.
+	 * @return the interned piece, in its first rotation.
+	 */
+	public static Piece of( Tetromino tetromino ) {
+		return tetromino.getPolyomino().getPiece();
+	}
+
+	/**
+	 * Returns the interned piece of a tetromino in a given rotation.
+	 *
+	 * @param tetromino the tetromino.
+	 * @param rotation the rotation index, in [0, max orientation).
+	 * @return the interned piece.
+	 */
+	public static Piece of( Tetromino tetromino, final int rotation ) {
+		return of( tetromino.getPolyomino(), rotation );
+	}
+
+	/**
+	 * Returns the interned piece of a polyomino in a given rotation.
+	 *
+	 * @param polyomino the polyomino.
+	 * @param rotation the rotation index, in [0, max orientation).
+	 * @return the interned piece.
+	 */
+	public static Piece of( Polyomino polyomino, final int rotation ) {
+		return byId( polyomino.getIdBase() + rotation );
+	}
+
+	/**
+	 * Returns the interned piece with an id, see {@link #getId()}.
+	 *
+	 * @param id the id.
+	 * @return the interned piece.
+	 */
+	public static Piece byId( final int id ) {
+		return Polyomino.rotation( id );
+	}
+
+	/**
+	 * Returns the number of distinct rotations of all defined polyominoes,
+	 * all ids are in [0, idCount()). It grows as polyominoes are defined.
+	 *
+	 * @return the number of ids.
+	 */
+	public static int idCount() {
+		return Polyomino.rotationCount();
+	}
+
+	/**
+	 * Constructs a Piece given the tetromino it represents.<br/>
+	 * Prefer the interned pieces of {@link #of(Tetromino)}.
 	 *
 	 * @param tetromino the tetromino.
 	 */
 	public Piece( Tetromino tetromino ) {
-		this( tetromino, tetromino.getBody(), tetromino != Tetromino.SQUARE );
+		this( tetromino.getPolyomino() );
+	}
+
+	/**
+	 * Constructs a Piece given the polyomino it represents.<br/>
+	 * Prefer the interned pieces of {@link Polyomino#getPiece()}.
+	 *
+	 * @param polyomino the polyomino.
+	 */
+	public Piece( Polyomino polyomino ) {
+		this( polyomino, polyomino.getBody(), true );
 	}
 
 	/**
@@ -131,8 +203,9 @@ public final class Piece {
 	 * @param body The points of this piece.
 	 * @param constructRotations Whether or not to construct rotations.
 	 */
-	protected Piece( final Tetromino tetromino, final FinalPosition[] body, final boolean constructRotations ) {
-		this.type = tetromino;
+	protected Piece( final Polyomino polyomino, final FinalPosition[] body, final boolean constructRotations ) {
+		this.polyomino = polyomino;
+		this.type = polyomino.getTetromino();
 		this.body = body;
 
 		{
@@ -143,37 +216,41 @@ public final class Piece {
 			int maxY = Integer.MIN_VALUE,
 				minY = Integer.MAX_VALUE;
 
-			List<Integer> skirt = Lists.newArrayListWithCapacity( MAX_POSITION_COUNT );
+			/*
+			 * Since sorted, the first & last always has min/max-X,
+			 * and the first occurrence of each x has minY(x) = skirt(x).
+			 * A polyomino is connected, so every x in between occurs.
+			 */
+			this.skirt = new int[this.computeLength( this.body[0].getX(), this.body[this.body.length - 1].getX() )];
 
+			int lastX = Integer.MIN_VALUE;
 			for ( Position pos : this.body ) {
 				// Set new max-y if needed.
 				maxY = Math.max( maxY, pos.y() );
 
-				// Since sorted: size() - 1 < x <=> first occurrence of x => we're at minY(x) = skirt(x).
-				if ( skirt.size() - 1 < pos.x() ) {
+				if ( pos.x() != lastX ) {
 					// Set min-y for all x.
 					minY = Math.min( minY, pos.y() );
 
 					// Set skirt(x).
-					skirt.add( pos.y() );
+					this.skirt[pos.x() - this.body[0].getX()] = pos.y();
+					lastX = pos.x();
 				}
 			}
 
-			// Save skirt. toArray doesn't work.
-			this.skirt = new int[skirt.size()];
-			for ( int x = 0; x < skirt.size(); x++ ) {
-				this.skirt[x] = skirt.get( x );
-			}
-
 			/*
 			 * Compute width & height
-			 * Since body is sorted in first-hand on x the first & last always has min/max-X.
-			 * This procedure however does not work for y since it is sorted on y in second-hand.
+			 * This procedure does not work for y since it is sorted on y in second-hand.
 			 */
-			this.dim = new FinalPosition(
-				this.computeLength( this.body[0].getX(), this.body[this.body.length - 1].getX() ),
-				this.computeLength( minY, maxY )
-			);
+			this.dim = new FinalPosition( this.skirt.length, this.computeLength( minY, maxY ) );
+		}
+
+		{
+			// Pack the body into row masks, so that collisions are tested with a shift & an and.
+			this.rowMasks = new long[this.getHeight()];
+			for ( Position pos : this.body ) {
+				this.rowMasks[pos.y()] |= 1L << pos.x();
+			}
 		}
 
 		if ( constructRotations ) {
@@ -242,6 +319,18 @@ public final class Piece {
 		return this.skirt;
 	}
 
+	/**
+	 * Returns a reference to the body packed per row:
+	 * bit x of element y is set iff (x, y) is in the body.<br/>
+	 * Shifted by a column, a row mask lines up with a row of a bitboard.
+	 * Do not modify the contents of the returned array.
+	 *
+	 * @return the row masks, one per row of the piece.
+	 */
+	public long[] getRowMasks() {
+		return this.rowMasks;
+	}
+
 	/**
 	 * Returns a reference to the piece:s body.
 	 * Do not modify the contents of the returned array.
@@ -273,12 +362,21 @@ public final class Piece {
 	/**
 	 * Returns the Tetromino type of this Piece.
 	 *
-	 * @return The Tetromino type.
+	 * @return The Tetromino type, or null if the piece isn't a tetromino.
 	 */
 	public Tetromino getType() {
 		return this.type;
 	}
 
+	/**
+	 * Returns the Polyomino shape of this Piece.
+	 *
+	 * @return The polyomino.
+	 */
+	public Polyomino getPolyomino() {
+		return this.polyomino;
+	}
+
 	/* --------------------------------
 	 * Rotation access.
 	 * --------------------------------
@@ -332,6 +430,30 @@ public final class Piece {
 		}
 	}
 
+	/**
+	 * Returns the index of this rotation: the number of CCW rotations
+	 * from the piece it was constructed as, in [0, {@link #MAX_ORIENTATION}).<br/>
+	 * Together with {@link #getType()} it identifies the rotation
+	 * whatever Piece instance represents it.
+	 *
+	 * @return the rotation index.
+	 */
+	public int getRotation() {
+		return this.rotation;
+	}
+
+	/**
+	 * Returns the id of this rotation: a small integer, dense over the
+	 * distinct rotations of all polyominoes, in [0, {@link #idCount()}).<br/>
+	 * Pieces are equal iff their ids are, see {@link #equals(Object)},
+	 * so the id can key caches, transposition tables & replays.
+	 *
+	 * @return the id.
+	 */
+	public int getId() {
+		return this.polyomino.getIdBase() + this.rotation;
+	}
+
 	/**
 	 * Returns the maximum orientation value,
 	 * AKA the number of unique rotations a piece has.
@@ -339,10 +461,6 @@ public final class Piece {
 	 * @return Maxium rotation value for piece.
 	 */
 	public int getMaxOrientation() {
-		/*
-		 * Internal note: This method is not to be called before getPieces()
-		 * has been called for its first time.
-		 */
 		return this.maxOrientation.max();
 	}
 
@@ -454,9 +572,10 @@ public final class Piece {
 		for ( int i = 0; ; i++ ) {
 			Piece next = this.makeRotation( current );
 			next.maxOrientation = first.maxOrientation;
+			next.rotation = i + 1;
 
 			// first == next -> no more rotations -> current refers back to first & vice versa.
-			if ( i == 3 || first.equals( next ) ) {
+			if ( i == MAX_ORIENTATION - 1 || first.hasSameBody( next ) ) {
 				current.next = first;
 				first.prev = current;
 
@@ -481,7 +600,7 @@ public final class Piece {
 	 * @return The new rotated piece.
 	 */
 	protected Piece makeRotation( final Piece origin ) {
-		return new Piece( this.type, this.computeRotationBody( origin ), false );
+		return new Piece( this.polyomino, this.computeRotationBody( origin ), false );
 	}
 
 	/**
@@ -511,26 +630,38 @@ public final class Piece {
 	 */
 
 	/**
-	 * Returns true if two pieces are the same which,
+	 * Returns true if the bodies of two pieces contain the same points.<br/>
+	 * Bodies are sorted, so they are compared element-wise.
+	 *
+	 * @param piece the piece to compare with.
+	 * @return true if the bodies are the same.
+	 */
+	private boolean hasSameBody( Piece piece ) {
+		return Arrays.equals( this.body, piece.body );
+	}
+
+	/**
+	 * Returns true if two pieces are the same,
 	 * that is: their bodies contain the same points.
 	 *
+	 * <p>Implementation: a rotation is fully decided by its polyomino
+	 * & rotation index, symmetric rotations are folded into one at
+	 * construction, so comparing ids is O(1).</p>
+	 *
 	 * @return true if they are considered equal, false otherwise.
 	 */
 	@Override
 	public final boolean equals( Object obj ) {
-		// We know that it is sorted, so equals works, otherwise we must use containsAll(...)
-		return this == obj || obj instanceof Piece && this.body.equals( ((Piece) obj).body );
-		//return this == obj || obj instanceof Piece && Arrays.asList( this.body ).containsAll( Arrays.asList( ((Piece) obj).body ) );
+		return this == obj || obj instanceof Piece && this.getId() == ((Piece) obj).getId();
 	}
 
 	/**
-	 * Uses hashCode() of each Position in {@link #getBody()}
-	 * as a component to compute hashCode.
+	 * Uses {@link #getId()} as hashCode, it is unique per distinct rotation.
 	 *
 	 * {@inheritDoc}
 	 */
 	@Override
 	public final int hashCode() {
-		return Objects.hashCode( (Object) this.body );
+		return this.getId();
 	}
 }
\ No newline at end of file
@@ -19,7 +19,9 @@ package se.centril.atetria.model;
 import se.centril.atetria.framework.utils.factory.FactoryInstantiator;
 
 /**
- * Factory for Piece:s.
+ * Factory for Piece:s.<br/>
+ * All factories hand out the interned pieces of {@link Piece#of(Tetromino)},
+ * so producing a piece never allocates.
  *
  * @author Centril<twingoow@gmail.com> / Mazdak Farrokhzad.
  * @version 1.0
@@ -28,7 +30,7 @@ import se.centril.atetria.framework.utils.factory.FactoryInstantiator;
 public final class PieceFactory extends Tetromino.ToFactory<Piece> {
 	{
 		FactoryInstantiator<Tetromino, Piece> maker = new FactoryInstantiator<Tetromino, Piece>() {
-			public Piece get( Tetromino key ) { return new Piece( key ); }
+			public Piece get( Tetromino key ) { return Piece.of( key ); }
 		};
 
 		add( Tetromino.SQUARE, maker );
@@ -0,0 +1,379 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import se.centril.atetria.framework.geom.FinalPosition;
+import se.centril.atetria.framework.geom.Position;
+import se.centril.atetria.framework.utils.string.StringUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Polyomino is the shape of a piece: n positions connected edge to edge.
+ *
+ * <p>All polyominoes are kept in a registry & get dense ids in order of definition.
+ * The seven {@link Tetromino}es are always defined first, in ordinal order,
+ * other sets such as pentominoes are defined with {@link #define(String, FinalPosition[])}
+ * or loaded from a definition file with {@link #load(Reader)}.</p>
+ *
+ * <p>When a polyomino is defined, the rotation ring of its piece is
+ * generated once, together with skirts & bitmasks, and interned.
+ * Every distinct rotation of every polyomino gets a dense id, see {@link Piece#getId()}.</p>
+ *
+ * <p>A {@link Board} stores a polyomino per position in a byte,
+ * so at most {@link #MAX_COUNT} polyominoes can be defined.</p>
+ */
+public final class Polyomino {
+	/** The maximum number of polyominoes, one per non-empty board position code. */
+	public static final int MAX_COUNT = 255;
+
+	/** The maximum width & height of a polyomino, so that a row of it fits in a word. */
+	public static final int MAX_SIDE = 64;
+
+	/** The defined polyominoes, keyed by id, replaced on definition. */
+	private static volatile Polyomino[] registry = new Polyomino[0];
+
+	/** The interned rotations of all polyominoes, keyed by piece id, replaced on definition. */
+	private static volatile Piece[] rotations = new Piece[0];
+
+	static {
+		for ( Tetromino tetromino : Tetromino.values() ) {
+			register( tetromino.name(), tetromino.getBody(), tetromino );
+		}
+	}
+
+	private final int id;
+	private final String name;
+
+	/** The normalized body, sorted in first-hand on x, second-hand y. */
+	private final FinalPosition[] body;
+
+	/** The tetromino this is, or null. */
+	private final Tetromino tetromino;
+
+	/** The interned piece, the first rotation of the ring. */
+	private Piece piece;
+
+	/** The piece id of the first rotation, the ids of the other rotations follow. */
+	private int idBase;
+
+	/**
+	 * Constructs a polyomino, see {@link #register(String, FinalPosition[], Tetromino)}.
+	 */
+	private Polyomino( final int id, final String name, final FinalPosition[] body, final Tetromino tetromino ) {
+		this.id = id;
+		this.name = name;
+		this.body = body;
+		this.tetromino = tetromino;
+	}
+
+	/* --------------------------------
+	 * Registry.
+	 * --------------------------------
+	 */
+
+	/**
+	 * Defines a polyomino, or returns the one already defined by name if it has the same body.<br/>
+	 * The body is normalized, so that its lowest & leftmost positions are at 0.
+	 *
+	 * @param name the unique name of polyomino.
+	 * @param body the positions of its body.
+	 * @return the polyomino.
+	 * @throws IllegalArgumentException if the body is empty, has duplicates, isn't connected
+	 * 			or is too large, or if name is defined with another body.
+	 * @throws IllegalStateException if {@link #MAX_COUNT} polyominoes are already defined.
+	 */
+	public static Polyomino define( final String name, final FinalPosition[] body ) {
+		return register( name, body, null );
+	}
+
+	/**
+	 * Defines a polyomino, see {@link #define(String, FinalPosition[])}.
+	 */
+	private static synchronized Polyomino register( final String name, final FinalPosition[] body, final Tetromino tetromino ) {
+		Preconditions.checkNotNull( name );
+		final FinalPosition[] normalized = normalize( body );
+
+		Polyomino existing = forName( name );
+		if ( existing != null ) {
+			Preconditions.checkArgument( Arrays.equals( existing.body, normalized ), "Polyomino %s is already defined with another body", name );
+			return existing;
+		}
+
+		Preconditions.checkState( registry.length < MAX_COUNT, "Can't define more than %s polyominoes", MAX_COUNT );
+
+		final Polyomino polyomino = new Polyomino( registry.length, name, normalized, tetromino );
+
+		// Generate & intern the rotation ring once.
+		polyomino.piece = new Piece( polyomino );
+		polyomino.idBase = rotations.length;
+
+		final Piece[] pieces = Arrays.copyOf( rotations, rotations.length + polyomino.piece.getMaxOrientation() );
+		for ( Iterator<Piece> it = polyomino.piece.iterator(); it.hasNext(); ) {
+			final Piece piece = it.next();
+			pieces[polyomino.idBase + piece.getRotation()] = piece;
+		}
+
+		final Polyomino[] polyominoes = Arrays.copyOf( registry, registry.length + 1 );
+		polyominoes[polyomino.id] = polyomino;
+
+		rotations = pieces;
+		registry = polyominoes;
+
+		return polyomino;
+	}
+
+	/**
+	 * Normalizes & validates a body.
+	 *
+	 * @param body the body.
+	 * @return a sorted copy, moved so that its lowest & leftmost positions are at 0.
+	 */
+	private static FinalPosition[] normalize( final FinalPosition[] body ) {
+		Preconditions.checkArgument( body.length > 0, "A polyomino needs a body" );
+
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		for ( Position pos : body ) {
+			minX = Math.min( minX, pos.x() );
+			minY = Math.min( minY, pos.y() );
+		}
+
+		final FinalPosition[] normalized = new FinalPosition[body.length];
+		for ( int i = 0; i < body.length; i++ ) {
+			normalized[i] = new FinalPosition( body[i].x() - minX, body[i].y() - minY );
+			Preconditions.checkArgument( normalized[i].x() < MAX_SIDE && normalized[i].y() < MAX_SIDE, "A polyomino can't be wider or taller than %s", MAX_SIDE );
+		}
+
+		Arrays.sort( normalized );
+		for ( int i = 1; i < normalized.length; i++ ) {
+			Preconditions.checkArgument( !normalized[i].equals( normalized[i - 1] ), "Duplicate position %s", normalized[i] );
+		}
+
+		Preconditions.checkArgument( isConnected( normalized ), "A polyomino must be connected" );
+
+		return normalized;
+	}
+
+	/**
+	 * Returns true if all positions of a sorted body are connected edge to edge.
+	 *
+	 * @param body the sorted body.
+	 * @return true if connected.
+	 */
+	private static boolean isConnected( final FinalPosition[] body ) {
+		final boolean[] reached = new boolean[body.length];
+		final int[] stack = new int[body.length];
+		int top = 0, count = 1;
+
+		reached[0] = true;
+		stack[top++] = 0;
+		while ( top > 0 ) {
+			final Position pos = body[stack[--top]];
+			for ( int i = 0; i < body.length; i++ ) {
+				if ( !reached[i] && Math.abs( body[i].x() - pos.x() ) + Math.abs( body[i].y() - pos.y() ) == 1 ) {
+					reached[i] = true;
+					stack[top++] = i;
+					++count;
+				}
+			}
+		}
+
+		return count == body.length;
+	}
+
+	/**
+	 * Defines all polyominoes of a definition file.
+	 *
+	 * <p>Each line defines a polyomino by its name followed by the
+	 * x,y pairs of its body, separated by whitespace, e.g: <code>T 0,0 1,0 2,0 1,1</code>.<br/>
+	 * Blank lines & lines starting with # are ignored.</p>
+	 *
+	 * @param reader the reader of the definition file, it is not closed.
+	 * @return the polyominoes defined by the file, in order.
+	 * @throws IOException if reading fails.
+	 * @throws IllegalArgumentException if a line is malformed or an invalid polyomino.
+	 */
+	public static List<Polyomino> load( final Reader reader ) throws IOException {
+		final BufferedReader lines = new BufferedReader( reader );
+		final List<Polyomino> polyominoes = Lists.newArrayList();
+
+		int lineNo = 0;
+		for ( String line; (line = lines.readLine()) != null; ) {
+			++lineNo;
+			line = line.trim();
+			if ( line.isEmpty() || line.startsWith( "#" ) ) {
+				continue;
+			}
+
+			try {
+				Iterator<String> parts = StringUtils.WS_SPLITTER.split( line ).iterator();
+				final String name = parts.next();
+
+				final List<FinalPosition> body = Lists.newArrayList();
+				while ( parts.hasNext() ) {
+					List<String> xy = Lists.newArrayList( StringUtils.COMMA_SPLITTER.split( parts.next() ) );
+					Preconditions.checkArgument( xy.size() == 2, "Expected an x,y pair" );
+					body.add( new FinalPosition( Integer.parseInt( xy.get( 0 ) ), Integer.parseInt( xy.get( 1 ) ) ) );
+				}
+
+				polyominoes.add( define( name, body.toArray( new FinalPosition[body.size()] ) ) );
+			} catch ( IllegalArgumentException e ) {
+				// NumberFormatException is an IllegalArgumentException too.
+				throw new IllegalArgumentException( "Line " + lineNo + ": " + e.getMessage(), e );
+			}
+		}
+
+		return polyominoes;
+	}
+
+	/**
+	 * Returns the polyomino with an id.
+	 *
+	 * @param id the id, in [0, {@link #count()}).
+	 * @return the polyomino.
+	 */
+	public static Polyomino byId( final int id ) {
+		return registry[id];
+	}
+
+	/**
+	 * Returns the polyomino defined by a name, or null if there is none.
+	 *
+	 * @param name the name.
+	 * @return the polyomino, or null.
+	 */
+	public static Polyomino forName( final String name ) {
+		for ( Polyomino polyomino : registry ) {
+			if ( polyomino.name.equals( name ) ) {
+				return polyomino;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the number of defined polyominoes.
+	 *
+	 * @return the count.
+	 */
+	public static int count() {
+		return registry.length;
+	}
+
+	/**
+	 * Returns the interned rotation with a piece id, see {@link Piece#getId()}.
+	 *
+	 * @param id the piece id.
+	 * @return the interned piece.
+	 */
+	static Piece rotation( final int id ) {
+		return rotations[id];
+	}
+
+	/**
+	 * Returns the number of distinct rotations of all defined polyominoes.
+	 *
+	 * @return the number of piece ids.
+	 */
+	static int rotationCount() {
+		return rotations.length;
+	}
+
+	/* --------------------------------
+	 * Getters.
+	 * --------------------------------
+	 */
+
+	/**
+	 * Returns the id of polyomino, dense in order of definition.<br/>
+	 * The id of a tetromino is its ordinal.
+	 *
+	 * @return the id.
+	 */
+	public int getId() {
+		return this.id;
+	}
+
+	/**
+	 * Returns the unique name of polyomino.
+	 *
+	 * @return the name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the number of positions in the body, the n of n-omino.
+	 *
+	 * @return the size.
+	 */
+	public int getSize() {
+		return this.body.length;
+	}
+
+	/**
+	 * Returns a copy of the normalized body.
+	 *
+	 * @return the body.
+	 */
+	public FinalPosition[] getBody() {
+		return this.body.clone();
+	}
+
+	/**
+	 * Returns the tetromino this polyomino is, or null if it isn't one.
+	 *
+	 * @return the tetromino, or null.
+	 */
+	public Tetromino getTetromino() {
+		return this.tetromino;
+	}
+
+	/**
+	 * Returns the interned piece of polyomino, in its first rotation.<br/>
+	 * Spawning it allocates nothing.
+	 *
+	 * @return the piece.
+	 */
+	public Piece getPiece() {
+		return this.piece;
+	}
+
+	/**
+	 * Returns the piece id of the first rotation, the ids of the other rotations follow.
+	 *
+	 * @return the id base.
+	 */
+	int getIdBase() {
+		return this.idBase;
+	}
+
+	@Override
+	public String toString() {
+		return this.name;
+	}
+}
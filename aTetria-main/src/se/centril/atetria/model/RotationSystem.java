@@ -0,0 +1,39 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+import se.centril.atetria.model.command.RotationCommand;
+
+/**
+ * <p>RotationSystem decides where a rotated piece may end up.</p>
+ * <p>It has one method: {@link #kicks(Piece, RotationCommand)} that returns
+ * the offsets to try for the rotated piece, in order. The game tests each
+ * with {@link Board#check(Piece, int, int)} & takes the first that fits.</p>
+ */
+public interface RotationSystem {
+	/**
+	 * Returns the offsets to try, in order, from the origin of piece to the origin
+	 * of piece rotated in direction, packed as [dx0, dy0, dx1, dy1, ...].<br/>
+	 * The first offset is the rotation without any kick.
+	 * Do not modify the contents of the returned array.
+	 *
+	 * @param piece the piece to rotate.
+	 * @param direction the direction to rotate in.
+	 * @return the packed offsets, at least one.
+	 */
+	public int[] kicks( Piece piece, RotationCommand direction );
+}
@@ -0,0 +1,31 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+/**
+ * How thoroughly a Board checks its invariants after mutations.
+ */
+public enum SanityLevel {
+	/** Never check, nothing is paid on the hot path. */
+	OFF,
+
+	/** Check the rows changed since the last check after every n:th mutation, see {@link Board#setSanityInterval(int)}. */
+	SAMPLED,
+
+	/** Do a full check after every mutation. */
+	FULL
+}
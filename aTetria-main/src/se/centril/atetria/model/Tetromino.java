@@ -53,6 +53,15 @@ public enum Tetromino {						// N rotations
 		this.bodyPos = makeBody( bodyString );
 	}
 
+	/**
+	 * Returns the polyomino of this tetromino, its id is the ordinal.
+	 *
+	 * @return the polyomino.
+	 */
+	public Polyomino getPolyomino() {
+		return Polyomino.byId( this.ordinal() );
+	}
+
 	/**
 	 * Returns the body positions.
 	 *
@@ -0,0 +1,33 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model.rotation;
+
+import se.centril.atetria.model.Piece;
+import se.centril.atetria.model.command.RotationCommand;
+
+/**
+ * CenteredRotationSystem rotates pieces about their center without any kicks:
+ * a rotation that doesn't fit where it is fails.
+ */
+public class CenteredRotationSystem extends KickTableRotationSystem {
+	private static final int[] NO_KICKS = { 0, 0 };
+
+	@Override
+	protected int[] kickTable( Piece piece, RotationCommand direction ) {
+		return NO_KICKS;
+	}
+}
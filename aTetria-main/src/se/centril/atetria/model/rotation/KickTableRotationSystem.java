@@ -0,0 +1,92 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model.rotation;
+
+import java.util.Arrays;
+
+import se.centril.atetria.model.Piece;
+import se.centril.atetria.model.RotationSystem;
+import se.centril.atetria.model.command.RotationCommand;
+
+/**
+ * KickTableRotationSystem computes the offsets of each rotation
+ * of each piece once, on first use, so {@link #kicks(Piece, RotationCommand)} is a lookup.
+ *
+ * <p>Every offset is relative to the piece appearing to rotate about its center,
+ * the kicks of a rotation are given by {@link #kickTable(Piece, RotationCommand)}.</p>
+ */
+public abstract class KickTableRotationSystem implements RotationSystem {
+	/** The number of rotation directions. */
+	private static final int DIRECTIONS = RotationCommand.values().length;
+
+	/**
+	 * The offsets of each (piece id, direction) at [id * DIRECTIONS + direction],
+	 * grown when polyominoes are defined after construction.
+	 */
+	private int[][] table = new int[Piece.idCount() * DIRECTIONS][];
+
+	/**
+	 * Returns the kicks of rotating piece in a direction,
+	 * packed as [dx0, dy0, dx1, dy1, ...], starting with the unkicked (0, 0).
+	 *
+	 * @param piece the piece to rotate.
+	 * @param direction the direction to rotate in.
+	 * @return the packed kicks.
+	 */
+	protected abstract int[] kickTable( Piece piece, RotationCommand direction );
+
+	@Override
+	public int[] kicks( Piece piece, RotationCommand direction ) {
+		final int index = piece.getId() * DIRECTIONS + direction.ordinal();
+
+		if ( index >= this.table.length ) {
+			this.table = Arrays.copyOf( this.table, Piece.idCount() * DIRECTIONS );
+		}
+
+		if ( this.table[index] == null ) {
+			this.table[index] = this.computeKicks( piece, direction );
+		}
+
+		return this.table[index];
+	}
+
+	/**
+	 * Centers the kicks of a rotation.
+	 *
+	 * @param piece the piece to rotate.
+	 * @param direction the direction to rotate in.
+	 * @return the packed offsets.
+	 */
+	private int[] computeKicks( Piece piece, RotationCommand direction ) {
+		/*
+		 * Make the piece appear to rotate about its center.
+		 * We can't just leave it at the same lower-left
+		 * origin as the previous piece.
+		 */
+		final Piece rotated = piece.rotate( direction );
+		final int centerX = (piece.getWidth() - rotated.getWidth()) / 2;
+		final int centerY = (piece.getHeight() - rotated.getHeight()) / 2;
+
+		final int[] kicks = this.kickTable( piece, direction ).clone();
+		for ( int i = 0; i < kicks.length; i += 2 ) {
+			kicks[i] += centerX;
+			kicks[i + 1] += centerY;
+		}
+
+		return kicks;
+	}
+}
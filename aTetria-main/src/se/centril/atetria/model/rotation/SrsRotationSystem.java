@@ -0,0 +1,79 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model.rotation;
+
+import se.centril.atetria.model.Piece;
+import se.centril.atetria.model.command.RotationCommand;
+
+/**
+ * SrsRotationSystem kicks rotations with the wall kick tables
+ * of the Super Rotation System (SRS).
+ *
+ * <p>When a rotation doesn't fit where it is, up to four other offsets
+ * are tried, against walls & the stack alike. The offsets depend on
+ * the tetromino, the state rotated from & the direction.
+ * SRS states are 0, R (clockwise), 2 & L, a piece of rotation index r,
+ * which counts counter-clockwise rotations, is in state (4 - r) % 4.</p>
+ *
+ * <p>Pieces here rotate about the center of their bounding box
+ * rather than in the fixed boxes of SRS, so the behaviour
+ * is SRS-like rather than identical to it.
+ * Polyominoes other than the tetrominoes have no SRS table & never kick.</p>
+ */
+public class SrsRotationSystem extends KickTableRotationSystem {
+	/** The number of SRS states. */
+	private static final int STATES = 4;
+
+	/** The kicks of J, L, S, T & Z at [state][direction], direction as {@link RotationCommand#ordinal()}. */
+	private static final int[][][] JLSTZ_KICKS = {
+		/* 0 */ { { 0, 0, -1, 0, -1, 1, 0, -2, -1, -2 }, { 0, 0, 1, 0, 1, 1, 0, -2, 1, -2 } },
+		/* R */ { { 0, 0, 1, 0, 1, -1, 0, 2, 1, 2 }, { 0, 0, 1, 0, 1, -1, 0, 2, 1, 2 } },
+		/* 2 */ { { 0, 0, 1, 0, 1, 1, 0, -2, 1, -2 }, { 0, 0, -1, 0, -1, 1, 0, -2, -1, -2 } },
+		/* L */ { { 0, 0, -1, 0, -1, -1, 0, 2, -1, 2 }, { 0, 0, -1, 0, -1, -1, 0, 2, -1, 2 } }
+	};
+
+	/** The kicks of I at [state][direction]. */
+	private static final int[][][] I_KICKS = {
+		/* 0 */ { { 0, 0, -2, 0, 1, 0, -2, -1, 1, 2 }, { 0, 0, -1, 0, 2, 0, -1, 2, 2, -1 } },
+		/* R */ { { 0, 0, -1, 0, 2, 0, -1, 2, 2, -1 }, { 0, 0, 2, 0, -1, 0, 2, 1, -1, -2 } },
+		/* 2 */ { { 0, 0, 2, 0, -1, 0, 2, 1, -1, -2 }, { 0, 0, 1, 0, -2, 0, 1, -2, -2, 1 } },
+		/* L */ { { 0, 0, 1, 0, -2, 0, 1, -2, -2, 1 }, { 0, 0, -2, 0, 1, 0, -2, -1, 1, 2 } }
+	};
+
+	/** O & polyominoes that aren't tetrominoes never kick. */
+	private static final int[] O_KICKS = { 0, 0 };
+
+	@Override
+	protected int[] kickTable( Piece piece, RotationCommand direction ) {
+		final int state = (STATES - piece.getRotation()) % STATES;
+
+		if ( piece.getType() == null ) {
+			return O_KICKS;
+		}
+
+		switch ( piece.getType() ) {
+		case SQUARE:
+			return O_KICKS;
+
+		case LINE:
+			return I_KICKS[state][direction.ordinal()];
+
+		default:
+			return JLSTZ_KICKS[state][direction.ordinal()];
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package se.centril.atetria.model.segmenter;
+
+import java.util.Arrays;
+
+import se.centril.atetria.model.Board;
+
+/**
+ * SegmentLabeler labels the connected segments of filled positions of a Board.
+ *
+ * <p>Unlike {@link StickySegmentFinder} it works on flat int arrays only,
+ * a position (x, y) is encoded as <code>y * width + x</code>.
+ * Segments are labeled one at a time by {@link #flood(int, int)}, so only
+ * the segments of interest are visited. Once warmed up, labeling allocates
+ * nothing and runs in O(labeled positions), as does {@link #reset()}.</p>
+ *
+ * <p>Labels are kept for a window of rows around the labeled positions only,
+ * & the work arrays grow with the no. of labeled positions, so memory is
+ * proportional to the region a clear affects, not to the height of the stack.</p>
+ *
+ * <p>Segments are numbered in order of labeling, and the label of any position
+ * is looked up with {@link #segmentAt(int, int)}, also after segments have moved.</p>
+ *
+ * <p>Which adjacent filled positions belong to the same segment
+ * is decided by {@link #connects(int, int, int, int)}.</p>
+ *
+ * <p>A flood stops growing once it touches a position the board knows
+ * to rest, see {@link Board#isRooted(int, int)}, or a segment known
+ * to rest. The segment is then {@link #isGrounded(int) grounded}
+ * & only the part labeled until then is kept.</p>
+ */
+public class SegmentLabeler {
+	/** The least no. of rows in the label window. */
+	private static final int MIN_ROWS = 16;
+
+	/** The board to label segments in. */
+	private final Board board;
+
+	/** The width of board. */
+	private final int width;
+
+	/** Segment + 1 of each position in rows [base, base + rows), 0 = not labeled. */
+	private int[] labels = new int[0];
+	private int base;
+	private int rows;
+
+	/** Whether or not no position is labeled, the window may then move freely. */
+	private boolean blank = true;
+
+	/** Work stack of positions for the flood. */
+	private int[] stack = new int[0];
+
+	/** Positions of all segments, segment s is at [starts[s], starts[s + 1]). */
+	private int[] positions = new int[0];
+	private int[] starts = new int[1];
+
+	/** Whether or not each segment is known to rest, see {@link #isGrounded(int)}. */
+	private boolean[] grounded = new boolean[1];
+
+	/** The number of segments labeled. */
+	private int count;
+
+	/**
+	 * Constructs the segment labeler.
+	 *
+	 * @param board the board to label segments in.
+	 */
+	public SegmentLabeler( Board board ) {
+		this.board = board;
+		this.width = board.getWidth();
+	}
+
+	/**
+	 * Whether or not two adjacent filled positions belong to the same segment.<br/>
+	 * Sticky labeling: all adjacent filled positions are connected.
+	 *
+	 * @param x x-coordinate of first position.
+	 * @param y y-coordinate of first position.
+	 * @param nx x-coordinate of adjacent position.
+	 * @param ny y-coordinate of adjacent position.
+	 * @return true if they are connected.
+	 */
+	protected boolean connects( int x, int y, int nx, int ny ) {
+		return true;
+	}
+
+	/**
+	 * Returns the board.
+	 *
+	 * @return the board.
+	 */
+	protected Board board() {
+		return this.board;
+	}
+
+	/**
+	 * Forgets all segments, only the labeled positions are visited.
+	 */
+	public void reset() {
+		for ( int i = 0; i < this.starts[this.count]; i++ ) {
+			this.setLabel( this.positions[i], 0 );
+		}
+
+		this.count = 0;
+		this.blank = true;
+	}
+
+	/**
+	 * Labels the segment containing filled position (x, y), unless already labeled.
+	 *
+	 * @param x x-coordinate of position.
+	 * @param y y-coordinate of position.
+	 * @return the segment, or -1 if the position is empty or rooted.
+	 */
+	public int flood( final int x, final int y ) {
+		if ( !this.board.isFilled( x, y ) || this.board.isRooted( x, y ) ) {
+			return -1;
+		}
+
+		final int start = y * this.width + x;
+		if ( this.labelAt( start ) != 0 ) {
+			return this.labelAt( start ) - 1;
+		}
+
+		if ( this.starts.length < this.count + 2 ) {
+			this.starts = Arrays.copyOf( this.starts, (this.count + 2) * 2 );
+			this.grounded = Arrays.copyOf( this.grounded, this.starts.length );
+		}
+
+		final int label = ++this.count;
+		this.grounded[label - 1] = false;
+		int end = this.starts[label - 1];
+		int top = 0;
+
+		this.setLabel( start, label );
+		this.stack = ensureLength( this.stack, 1 );
+		this.stack[top++] = start;
+
+		while ( top > 0 && !this.grounded[label - 1] ) {
+			final int i = this.stack[--top];
+			final int px = i % this.width;
+			final int py = i / this.width;
+			this.positions = ensureLength( this.positions, end + 1 );
+			this.positions[end++] = i;
+
+			if ( px > 0 ) {
+				top = this.visit( i - 1, px, py, px - 1, py, label, top );
+			}
+
+			if ( px < this.width - 1 ) {
+				top = this.visit( i + 1, px, py, px + 1, py, label, top );
+			}
+
+			if ( py > 0 ) {
+				top = this.visit( i - this.width, px, py, px, py - 1, label, top );
+			}
+
+			if ( py < this.board.getHeight() - 1 ) {
+				top = this.visit( i + this.width, px, py, px, py + 1, label, top );
+			}
+		}
+
+		// A grounded flood stops, what's left on the stack is labeled already.
+		this.positions = ensureLength( this.positions, end + top );
+		while ( top > 0 ) {
+			this.positions[end++] = this.stack[--top];
+		}
+
+		this.starts[label] = end;
+
+		return label - 1;
+	}
+
+	/**
+	 * Labels & pushes an adjacent position if it belongs to the segment,
+	 * grounds the segment if the position is known to rest.
+	 *
+	 * @return the new stack top.
+	 */
+	private int visit( final int i, final int x, final int y, final int nx, final int ny, final int label, int top ) {
+		if ( !this.board.isFilled( nx, ny ) ) {
+			return top;
+		}
+
+		final int other = this.labelAt( i );
+		if ( other == label || !this.connects( x, y, nx, ny ) ) {
+			return top;
+		}
+
+		if ( other != 0 ) {
+			// Only a grounded flood stops short of the rest of its segment.
+			this.grounded[label - 1] |= this.grounded[other - 1];
+		} else if ( this.board.isRooted( nx, ny ) ) {
+			this.grounded[label - 1] = true;
+		} else {
+			this.setLabel( i, label );
+			this.stack = ensureLength( this.stack, top + 1 );
+			this.stack[top++] = i;
+		}
+
+		return top;
+	}
+
+	/**
+	 * Returns array, or a copy twice as long if it is shorter than length.
+	 *
+	 * @param array the work array.
+	 * @param length the length needed.
+	 * @return the array to use.
+	 */
+	private static int[] ensureLength( final int[] array, final int length ) {
+		return array.length < length ? Arrays.copyOf( array, Math.max( length, array.length * 2 ) ) : array;
+	}
+
+	/**
+	 * Returns the label of an encoded position, 0 if it is outside the window.
+	 *
+	 * @param i the encoded position.
+	 * @return segment + 1, or 0 if not labeled.
+	 */
+	private int labelAt( final int i ) {
+		final int j = i - this.base * this.width;
+		return j >= 0 && j < this.rows * this.width ? this.labels[j] : 0;
+	}
+
+	/**
+	 * Sets the label of an encoded position, moving or growing the window to cover it.
+	 *
+	 * @param i the encoded position.
+	 * @param label segment + 1, or 0 to unlabel.
+	 */
+	private void setLabel( final int i, final int label ) {
+		final int y = i / this.width;
+		if ( this.blank || y < this.base || y >= this.base + this.rows ) {
+			this.cover( y );
+		}
+
+		this.labels[i - this.base * this.width] = label;
+	}
+
+	/**
+	 * Moves or grows the window of labels to cover row y.<br/>
+	 * A blank window is moved without copying, otherwise it at least doubles
+	 * towards y, so covering is amortized O(width) per labeled row.
+	 *
+	 * @param y the row.
+	 */
+	private void cover( final int y ) {
+		final int height = this.board.getHeight();
+
+		if ( this.blank ) {
+			// Every label is 0, the window is placed around y, most of it above where floods go.
+			this.rows = Math.min( height, Math.max( this.rows, MIN_ROWS ) );
+			this.base = Math.max( 0, Math.min( y - this.rows / 4, height - this.rows ) );
+			if ( this.labels.length < this.rows * this.width ) {
+				this.labels = new int[this.rows * this.width];
+			}
+
+			this.blank = false;
+			return;
+		}
+
+		final int top = this.base + this.rows;
+		final int to = Math.max( y + 1, top );
+		int rows = Math.max( to - Math.min( y, this.base ), this.rows * 2 );
+		final int base = y < this.base ? Math.max( 0, to - rows ) : this.base;
+		rows = Math.min( rows, height - base );
+
+		final int[] labels = new int[rows * this.width];
+		System.arraycopy( this.labels, 0, labels, (this.base - base) * this.width, this.rows * this.width );
+		this.labels = labels;
+		this.base = base;
+		this.rows = rows;
+	}
+
+	/**
+	 * Returns the segment of a position.
+	 *
+	 * @param x x-coordinate of position.
+	 * @param y y-coordinate of position.
+	 * @return the segment, or -1 if the position isn't labeled.
+	 */
+	public int segmentAt( final int x, final int y ) {
+		return this.labelAt( y * this.width + x ) - 1;
+	}
+
+	/**
+	 * Returns true if segment s is known to rest, as its flood touched a rooted position
+	 * or a grounded segment. A grounded segment may be labeled only in part.
+	 *
+	 * @param s the segment.
+	 * @return true if grounded.
+	 */
+	public boolean isGrounded( final int s ) {
+		return this.grounded[s];
+	}
+
+	/**
+	 * Returns the number of segments labeled since last {@link #reset()}.
+	 *
+	 * @return the number of segments.
+	 */
+	public int count() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the index of the first position of segment s,
+	 * <code>start( count() )</code> is the no. of labeled positions.
+	 *
+	 * @param s the segment.
+	 * @return the start index, see {@link #position(int)}.
+	 */
+	public int start( final int s ) {
+		return this.starts[s];
+	}
+
+	/**
+	 * Returns the index after the last position of segment s.
+	 *
+	 * @param s the segment.
+	 * @return the end index, see {@link #position(int)}.
+	 */
+	public int end( final int s ) {
+		return this.starts[s + 1];
+	}
+
+	/**
+	 * Returns the encoded position at index i, <code>y * width + x</code>.
+	 *
+	 * @param i the index.
+	 * @return the encoded position.
+	 */
+	public int position( final int i ) {
+		return this.positions[i];
+	}
+
+	/**
+	 * Removes the labels of segment s from its positions, its positions are kept.<br/>
+	 * Segments moving together are all unlabeled before any is moved, see {@link #moveDown(int, int)}.
+	 *
+	 * @param s the segment.
+	 */
+	public void unlabel( final int s ) {
+		for ( int i = this.start( s ); i < this.end( s ); i++ ) {
+			this.setLabel( this.positions[i], 0 );
+		}
+	}
+
+	/**
+	 * Moves all positions of unlabeled segment s down by distance rows & labels them,
+	 * used to keep the labeling in sync with the board.
+	 *
+	 * @param s the segment.
+	 * @param distance the no. of rows to move down.
+	 */
+	public void moveDown( final int s, final int distance ) {
+		final int delta = distance * this.width;
+		for ( int i = this.start( s ); i < this.end( s ); i++ ) {
+			this.positions[i] -= delta;
+			this.setLabel( this.positions[i], s + 1 );
+		}
+	}
+}
@@ -5,7 +5,7 @@ import java.util.List;
 import se.centril.atetria.framework.geom.Direction;
 import se.centril.atetria.framework.geom.Position;
 import se.centril.atetria.model.Board;
-import se.centril.atetria.model.Tetromino;
+import se.centril.atetria.model.Polyomino;
 
 /**
  * TetrominoSegmentFinder finds segments based on tetromino affiliation of pieces.
@@ -15,7 +15,7 @@ import se.centril.atetria.model.Tetromino;
  * @since Jun 6, 2013
  */
 public class TetrominoSegmentFinder extends StickySegmentFinder {
-	private Tetromino type;
+	private Polyomino type;
 
 	public TetrominoSegmentFinder( Board board ) {
 		super( board );
@@ -23,11 +23,11 @@ public class TetrominoSegmentFinder extends StickySegmentFinder {
 
 	@Override
 	public boolean condition( Position pos, Direction direction ) {
-		return super.condition( pos, direction ) && this.type == board().getState( pos ).getType();
+		return super.condition( pos, direction ) && this.type == board().getState( pos ).getPolyomino();
 	}
 
 	protected Segment find( Position pos ) {
-		this.type = board().getState( pos ).getType();
+		this.type = board().getState( pos ).getPolyomino();
 		return super.find( pos );
 	}
 
@@ -0,0 +1,18 @@
+package se.centril.atetria.model.segmenter;
+
+import se.centril.atetria.model.Board;
+
+/**
+ * TetrominoSegmentLabeler labels segments based on tetromino affiliation of pieces,
+ * the labeling counterpart of {@link TetrominoSegmentFinder}.
+ */
+public class TetrominoSegmentLabeler extends SegmentLabeler {
+	public TetrominoSegmentLabeler( Board board ) {
+		super( board );
+	}
+
+	@Override
+	protected boolean connects( int x, int y, int nx, int ny ) {
+		return board().getPolyomino( x, y ) == board().getPolyomino( nx, ny );
+	}
+}
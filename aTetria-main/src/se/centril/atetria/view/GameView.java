@@ -22,7 +22,9 @@ import se.centril.atetria.framework.gdx.BaseGdxView;
 import se.centril.atetria.framework.geom.Position;
 import se.centril.atetria.framework.utils.factory.Factory;
 import se.centril.atetria.model.Board;
+import se.centril.atetria.model.BoardSnapshot;
 import se.centril.atetria.model.Game;
+import se.centril.atetria.model.GameFrame;
 import se.centril.atetria.model.Piece;
 import se.centril.atetria.model.Tetromino;
 import se.centril.atetria.model.segmenter.SegPart;
@@ -123,30 +125,46 @@ public class GameView extends BaseGdxView {
 	}
 
 	private void renderBricks() {
-		Board board = this.game.getBoard();
-		Position dim = board.getSize();
+		// Render the latest published frame, never the live board.
+		GameFrame frame = this.game.getFrame();
+		BoardSnapshot board = frame.getBoard();
 
 		basify();
 
 		shapeRenderer.begin( ShapeType.Filled );
-		for ( int x = 0; x < dim.x(); x++ ) {
-			for ( int y = 0; y < dim.y(); y++ ) {
-				Piece piece = board.getState( x, y );
+		for ( int y = 0; y < board.getMaxHeight(); y++ ) {
+			BoardSnapshot.Row row = board.getRow( y );
+			for ( int x = 0; x < board.getWidth(); x++ ) {
+				Piece piece = row.getState( x );
 
 				if ( piece == Board.EMPTY ) {
 					continue;
 				}
 
-				Color color = colorMapper.get( piece.getType() );
-				Vector2 vec = temp.cpy().add( x * cellSize, y * cellSize );
+				this.renderBrick( piece, x, y );
+			}
+		}
 
-				shapeRenderer.setColor( color );
-				shapeRenderer.rect( vec.x, vec.y, cellSize, cellSize );
+		// The falling piece is an overlay, it is not in the board.
+		Piece current = frame.getCurrentPiece();
+		if ( current != null ) {
+			Position pos = frame.getCurrentPosition();
+			for ( Position part : current.getBody() ) {
+				this.renderBrick( current, pos.x() + part.x(), pos.y() + part.y() );
 			}
 		}
 		shapeRenderer.end();
 	}
 
+	private void renderBrick( Piece piece, int x, int y ) {
+		// Polyominoes other than the tetrominoes have no color of their own.
+		Color color = piece.getType() == null ? Color.GRAY : colorMapper.get( piece.getType() );
+		Vector2 vec = temp.cpy().add( x * cellSize, y * cellSize );
+
+		shapeRenderer.setColor( color );
+		shapeRenderer.rect( vec.x, vec.y, cellSize, cellSize );
+	}
+
 	private void basify() {
 		temp.set( -camera.viewportWidth / 2, -camera.viewportHeight / 2 );
 	}
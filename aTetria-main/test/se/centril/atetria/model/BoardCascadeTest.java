@@ -0,0 +1,303 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import se.centril.atetria.framework.geom.FinalPosition;
+import se.centril.atetria.framework.geom.Position;
+
+/**
+ * BoardCascadeTest checks the cascade clear modes of {@link Board}
+ * against a naive reference model of gravity.
+ *
+ * <p>There is no test framework in the tree, so the test is an application:
+ * <code>java se.centril.atetria.model.BoardCascadeTest</code>,
+ * it throws an AssertionError on the first failure.</p>
+ */
+public class BoardCascadeTest {
+	/** Pentominoes, some of them can wrap around others. */
+	private static final String PENTOMINOES =
+		"F 1,0 0,1 1,1 1,2 2,2\n" +
+		"L 0,0 1,0 0,1 0,2 0,3\n" +
+		"N 0,0 0,1 1,1 1,2 1,3\n" +
+		"P 0,0 0,1 1,1 0,2 1,2\n" +
+		"U 0,0 1,0 2,0 0,1 2,1\n" +
+		"V 0,0 1,0 2,0 0,1 0,2\n" +
+		"W 0,0 1,0 1,1 2,1 2,2\n" +
+		"Y 0,0 0,1 0,2 0,3 1,2\n";
+
+	/** The boards played on, as { width, height }, some are too wide or tall for single words. */
+	private static final int[][] DIMENSIONS = { { 10, 22 }, { 6, 16 }, { 70, 12 }, { 6, 80 } };
+
+	public static void main( String[] args ) throws IOException {
+		BoardCascadeTest test = new BoardCascadeTest();
+		test.interlockedSegmentsFallTogether();
+		test.matchesReference( ClearMode.CASCADE );
+		test.matchesReference( ClearMode.TETROMINO_CASCADE );
+		System.out.println( "BoardCascadeTest OK" );
+	}
+
+	private static void check( boolean condition, String message ) {
+		if ( !condition ) {
+			throw new AssertionError( message );
+		}
+	}
+
+	/**
+	 * A C-shaped segment wrapped around another segment falls together with it,
+	 * neither overwrites the other.
+	 */
+	public void interlockedSegmentsFallTogether() {
+		Polyomino c = Polyomino.define( "C8", new FinalPosition[] {
+			new FinalPosition( 0, 0 ), new FinalPosition( 1, 0 ), new FinalPosition( 2, 0 ),
+			new FinalPosition( 0, 1 ), new FinalPosition( 0, 2 ),
+			new FinalPosition( 0, 3 ), new FinalPosition( 1, 3 ), new FinalPosition( 2, 3 )
+		} );
+		Polyomino square = Tetromino.SQUARE.getPolyomino();
+		Piece line = Piece.of( Tetromino.LINE ).nextRotation();
+		check( line.getWidth() == 4, "line must lie down" );
+
+		Board board = new Board( 4, 8, 0 );
+		board.setClearMode( ClearMode.TETROMINO_CASCADE );
+		board.setSanityLevel( SanityLevel.FULL );
+		board.place( line, 0, 0 );
+		board.place( c.getPiece(), 0, 1 );
+		board.place( square.getPiece(), 1, 2 );
+		board.commit();
+		long hash = board.stateHash();
+
+		int mark = board.mark();
+		check( board.clearRows() == 1, "one row is cleared" );
+
+		int filled = 0;
+		for ( int y = 0; y < board.getHeight(); y++ ) {
+			for ( int x = 0; x < board.getWidth(); x++ ) {
+				filled += board.isFilled( x, y ) ? 1 : 0;
+			}
+		}
+
+		check( filled == 12, "no position is lost, got " + filled );
+		for ( Position pos : c.getBody() ) {
+			check( board.getPolyomino( pos.x(), pos.y() ) == c, "C fell one row at " + pos );
+		}
+
+		for ( Position pos : square.getBody() ) {
+			check( board.getPolyomino( pos.x() + 1, pos.y() + 1 ) == square, "square fell one row at " + pos );
+		}
+
+		check( board.getMaxHeight() == 4, "max height" );
+		board.checkSanity();
+
+		board.rollbackTo( mark );
+		check( board.stateHash() == hash && board.getPolyomino( 1, 4 ) == c, "rollback restores the clear" );
+	}
+
+	/**
+	 * Plays random pentominoes & tetrominoes, comparing every clear with the reference.
+	 *
+	 * @param mode the cascade mode.
+	 */
+	public void matchesReference( ClearMode mode ) throws IOException {
+		List<Polyomino> pentominoes = Polyomino.load( new StringReader( PENTOMINOES ) );
+		Random rng = new Random( 42 );
+
+		for ( int[] dim : DIMENSIONS ) {
+			for ( int game = 0; game < 6; game++ ) {
+				Board board = new Board( dim[0], dim[1], 0 );
+				board.setClearMode( mode );
+				board.setSanityLevel( SanityLevel.SAMPLED );
+				Reference reference = new Reference( dim[0], dim[1], mode );
+
+				/*
+				 * Every other game is played on top of garbage, sticky segments then reach deep below the clears.
+				 * The holes are at the walls, so every garbage row is a single run resting on the one below,
+				 * the stack rests before the first clear as it would in a game.
+				 */
+				if ( game % 2 == 1 ) {
+					for ( int g = 0; g < dim[1] / 2; g++ ) {
+						board.addGarbage( 1, rng.nextBoolean() ? 0 : dim[0] - 1, Piece.of( Tetromino.LINE ) );
+					}
+
+					board.commit();
+					reference.copy( board );
+				}
+
+				for ( int step = 0; step < 400; step++ ) {
+					Piece piece = rng.nextBoolean()
+						? pentominoes.get( rng.nextInt( pentominoes.size() ) ).getPiece()
+						: Piece.of( Tetromino.values()[rng.nextInt( Tetromino.values().length )] );
+					for ( int r = rng.nextInt( 4 ); r > 0; r-- ) {
+						piece = piece.nextRotation();
+					}
+
+					int x = rng.nextInt( dim[0] - piece.getWidth() + 1 );
+					int y = board.dropHeight( piece, x );
+					if ( y + piece.getHeight() > dim[1] ) {
+						break;
+					}
+
+					int mark = board.mark();
+					board.place( piece, x, y );
+					reference.place( piece, x, y );
+
+					String where = mode + " " + dim[0] + "x" + dim[1] + " game " + game + " step " + step;
+					check( board.clearRows() == reference.clearRows(), "cleared rows, " + where );
+					reference.compare( board, where );
+
+					board.release( mark );
+					board.commit();
+				}
+
+				board.checkSanity();
+			}
+		}
+	}
+
+	/**
+	 * The reference: every floating position falls one row at a time, all at once.
+	 */
+	private static class Reference {
+		private final int width;
+		private final int height;
+		private final ClearMode mode;
+		private final Polyomino[][] grid;
+
+		Reference( int width, int height, ClearMode mode ) {
+			this.width = width;
+			this.height = height;
+			this.mode = mode;
+			this.grid = new Polyomino[width][height];
+		}
+
+		void copy( Board board ) {
+			for ( int y = 0; y < this.height; y++ ) {
+				for ( int x = 0; x < this.width; x++ ) {
+					this.grid[x][y] = board.getPolyomino( x, y );
+				}
+			}
+		}
+
+		void place( Piece piece, int x, int y ) {
+			for ( Position pos : piece.getBody() ) {
+				this.grid[x + pos.x()][y + pos.y()] = piece.getPolyomino();
+			}
+		}
+
+		int clearRows() {
+			int total = 0;
+
+			for ( ;; ) {
+				int cleared = 0;
+				for ( int y = 0; y < this.height; y++ ) {
+					boolean full = true;
+					for ( int x = 0; x < this.width; x++ ) {
+						full &= this.grid[x][y] != null;
+					}
+
+					if ( full ) {
+						++cleared;
+						for ( int x = 0; x < this.width; x++ ) {
+							this.grid[x][y] = null;
+						}
+					}
+				}
+
+				if ( cleared == 0 ) {
+					return total;
+				}
+
+				total += cleared;
+
+				// Segments are labeled once, a falling segment doesn't stick to what it passes.
+				int[][] labels = new int[this.width][this.height];
+				int count = 0;
+				for ( int y = 0; y < this.height; y++ ) {
+					for ( int x = 0; x < this.width; x++ ) {
+						if ( this.grid[x][y] != null && labels[x][y] == 0 ) {
+							this.flood( labels, x, y, ++count );
+						}
+					}
+				}
+
+				while ( this.fall( labels, count ) ) {
+				}
+			}
+		}
+
+		/**
+		 * Moves every floating segment down one row.
+		 *
+		 * @param labels the segment of each position, moved along.
+		 * @param count the no. of segments.
+		 * @return true if anything moved.
+		 */
+		private boolean fall( int[][] labels, int count ) {
+			// A segment rests on the floor or on another resting segment, until nothing changes.
+			boolean[] resting = new boolean[count + 1];
+			for ( boolean changed = true; changed; ) {
+				changed = false;
+				for ( int y = 0; y < this.height; y++ ) {
+					for ( int x = 0; x < this.width; x++ ) {
+						int s = labels[x][y];
+						if ( s != 0 && !resting[s] && (y == 0 || labels[x][y - 1] != 0 && labels[x][y - 1] != s && resting[labels[x][y - 1]]) ) {
+							resting[s] = changed = true;
+						}
+					}
+				}
+			}
+
+			boolean moved = false;
+			for ( int y = 1; y < this.height; y++ ) {
+				for ( int x = 0; x < this.width; x++ ) {
+					if ( labels[x][y] != 0 && !resting[labels[x][y]] ) {
+						this.grid[x][y - 1] = this.grid[x][y];
+						this.grid[x][y] = null;
+						labels[x][y - 1] = labels[x][y];
+						labels[x][y] = 0;
+						moved = true;
+					}
+				}
+			}
+
+			return moved;
+		}
+
+		private void flood( int[][] labels, int x, int y, int label ) {
+			labels[x][y] = label;
+			int[][] neighbours = { { x - 1, y }, { x + 1, y }, { x, y - 1 }, { x, y + 1 } };
+			for ( int[] n : neighbours ) {
+				if ( n[0] >= 0 && n[0] < this.width && n[1] >= 0 && n[1] < this.height
+					&& labels[n[0]][n[1]] == 0 && this.grid[n[0]][n[1]] != null
+					&& (this.mode == ClearMode.CASCADE || this.grid[n[0]][n[1]] == this.grid[x][y]) ) {
+					this.flood( labels, n[0], n[1], label );
+				}
+			}
+		}
+
+		void compare( Board board, String where ) {
+			for ( int y = 0; y < this.height; y++ ) {
+				for ( int x = 0; x < this.width; x++ ) {
+					check( board.getPolyomino( x, y ) == this.grid[x][y], "position (" + x + ", " + y + "), " + where );
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,426 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * BoardSavepointTest checks {@link Board#mark()}, {@link Board#rollbackTo(int)}
+ * & {@link Board#release(int)} against a copy of the board,
+ * built by replaying only the moves that survived.
+ *
+ * <p>There is no test framework in the tree, so the test is an application:
+ * <code>java se.centril.atetria.model.BoardSavepointTest</code>,
+ * it throws an AssertionError on the first failure.</p>
+ */
+public class BoardSavepointTest {
+	/** The boards played on, as { width, height }, the narrow ones clear often. */
+	private static final int[][] DIMENSIONS = { { 6, 16 }, { 10, 22 }, { 70, 12 } };
+
+	public static void main( String[] args ) {
+		BoardSavepointTest test = new BoardSavepointTest();
+		for ( ClearMode mode : ClearMode.values() ) {
+			test.nestedRollbackAcrossClear( mode );
+			test.releaseOutOfOrder( mode );
+			test.randomSavepoints( mode );
+			test.garbageLiftRoundTrip( mode );
+		}
+
+		System.out.println( "BoardSavepointTest OK" );
+	}
+
+	private static void check( boolean condition, String message ) {
+		if ( !condition ) {
+			throw new AssertionError( message );
+		}
+	}
+
+	/**
+	 * A move: a piece dropped at a column, followed by a clear.
+	 */
+	private static class Move {
+		final Piece piece;
+		final int x;
+
+		Move( Piece piece, int x ) {
+			this.piece = piece;
+			this.x = x;
+		}
+
+		/**
+		 * Plays the move on a board.
+		 *
+		 * @param board the board.
+		 * @return the no. of rows cleared, or -1 if the piece doesn't fit.
+		 */
+		int play( Board board ) {
+			int y = board.dropHeight( this.piece, this.x );
+			if ( y + this.piece.getHeight() > board.getHeight() ) {
+				return -1;
+			}
+
+			check( !board.place( this.piece, this.x, y ).isFailed(), "the move fits" );
+			return board.clearRows();
+		}
+	}
+
+	private static Board newBoard( int[] dim, ClearMode mode ) {
+		Board board = new Board( dim[0], dim[1], 0 );
+		board.setClearMode( mode );
+		board.setSanityLevel( SanityLevel.FULL );
+		return board;
+	}
+
+	/**
+	 * Builds the copy: a fresh board which never saw a savepoint, with the moves replayed.
+	 */
+	private static Board replay( int[] dim, ClearMode mode, List<Move> moves ) {
+		Board copy = newBoard( dim, mode );
+		for ( Move move : moves ) {
+			check( move.play( copy ) >= 0, "the replayed move fits" );
+			copy.commit();
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Compares cells, heights, the hash & every feature of a board with its copy.
+	 */
+	private static void compare( Board board, Board copy, String where ) {
+		for ( int y = 0; y < board.getHeight(); y++ ) {
+			for ( int x = 0; x < board.getWidth(); x++ ) {
+				check( board.getPolyomino( x, y ) == copy.getPolyomino( x, y ), "position (" + x + ", " + y + "), " + where );
+			}
+
+			check( board.getRowWidth( y ) == copy.getRowWidth( y ), "row width " + y + ", " + where );
+		}
+
+		check( board.getMaxHeight() == copy.getMaxHeight(), "max height, " + where );
+		check( board.stateHash() == copy.stateHash(), "state hash, " + where );
+		check( board.stateEquals( copy ), "state equals, " + where );
+
+		BoardFeatures features = board.getFeatures();
+		BoardFeatures expected = copy.getFeatures();
+		for ( int x = 0; x < board.getWidth(); x++ ) {
+			check( board.getColumnHeight( x ) == copy.getColumnHeight( x ), "column height " + x + ", " + where );
+			check( features.getHoles( x ) == expected.getHoles( x ), "holes in column " + x + ", " + where );
+			check( features.getWellDepth( x ) == expected.getWellDepth( x ), "well depth " + x + ", " + where );
+		}
+
+		check( features.getAggregateHeight() == expected.getAggregateHeight(), "aggregate height, " + where );
+		check( features.getHoles() == expected.getHoles(), "holes, " + where );
+		check( features.getBumpiness() == expected.getBumpiness(), "bumpiness, " + where );
+		check( features.getWellSum() == expected.getWellSum(), "well sum, " + where );
+		check( features.getRowTransitions() == expected.getRowTransitions(), "row transitions, " + where );
+		check( features.getColumnTransitions() == expected.getColumnTransitions(), "column transitions, " + where );
+
+		board.checkSanity();
+	}
+
+	private static void expectDead( Board board, int mark, String where ) {
+		try {
+			board.rollbackTo( mark );
+		} catch ( IllegalArgumentException e ) {
+			try {
+				board.release( mark );
+			} catch ( IllegalArgumentException e2 ) {
+				return;
+			}
+		}
+
+		throw new AssertionError( "savepoint " + mark + " is released, " + where );
+	}
+
+	/**
+	 * Stacks four full rows but for the last column, a vertical line there clears them.
+	 */
+	private static List<Move> stackForClear( int width ) {
+		Piece flat = Piece.of( Tetromino.LINE ).nextRotation();
+		List<Move> moves = new ArrayList<Move>();
+		for ( int row = 0; row < 4; row++ ) {
+			for ( int x = 0; x + 4 < width; x += 4 ) {
+				moves.add( new Move( flat, x ) );
+			}
+		}
+
+		// Columns left over by the flat lines get a vertical line each.
+		for ( int x = (width - 1) / 4 * 4; x < width - 1; x++ ) {
+			moves.add( new Move( Piece.of( Tetromino.LINE ), x ) );
+		}
+
+		return moves;
+	}
+
+	/**
+	 * Nested savepoints, the inner ones around a four row clear,
+	 * rolled back one level at a time.
+	 *
+	 * @param mode the clear mode.
+	 */
+	public void nestedRollbackAcrossClear( ClearMode mode ) {
+		int[] dim = { 6, 16 };
+		Board board = newBoard( dim, mode );
+		List<Move> moves = new ArrayList<Move>();
+
+		int outer = board.mark();
+		for ( Move move : stackForClear( dim[0] ) ) {
+			check( move.play( board ) == 0, "no clear while stacking, " + mode );
+			moves.add( move );
+		}
+
+		List<Move> beforeClear = new ArrayList<Move>( moves );
+		int inner = board.mark();
+		Move clearing = new Move( Piece.of( Tetromino.LINE ), dim[0] - 1 );
+		check( clearing.play( board ) >= 4, "the vertical line clears, " + mode );
+		moves.add( clearing );
+
+		Move after = new Move( Piece.of( Tetromino.SIGMA ), 0 );
+		int innermost = board.mark();
+		after.play( board );
+		moves.add( after );
+		compare( board, replay( dim, mode, moves ), "before rollback, " + mode );
+
+		board.rollbackTo( innermost );
+		moves.remove( moves.size() - 1 );
+		compare( board, replay( dim, mode, moves ), "rollback to innermost, " + mode );
+
+		board.rollbackTo( inner );
+		compare( board, replay( dim, mode, beforeClear ), "rollback across the clear, " + mode );
+		expectDead( board, innermost, "after rollback to inner, " + mode );
+
+		// Replaying from the inner savepoint reaches the same state again.
+		clearing.play( board );
+		compare( board, replay( dim, mode, moves.subList( 0, beforeClear.size() + 1 ) ), "replay after rollback, " + mode );
+
+		board.rollbackTo( outer );
+		compare( board, replay( dim, mode, new ArrayList<Move>() ), "rollback to outer, " + mode );
+		expectDead( board, inner, "after rollback to outer, " + mode );
+
+		board.release( outer );
+		expectDead( board, outer, "after release, " + mode );
+		board.commit();
+		compare( board, replay( dim, mode, new ArrayList<Move>() ), "after release, " + mode );
+	}
+
+	/**
+	 * Releasing an inner savepoint keeps the outer one whole,
+	 * releasing an outer savepoint releases the ones nested inside it.
+	 *
+	 * @param mode the clear mode.
+	 */
+	public void releaseOutOfOrder( ClearMode mode ) {
+		int[] dim = { 6, 16 };
+		Board board = newBoard( dim, mode );
+		List<Move> stack = stackForClear( dim[0] );
+		Move clearing = new Move( Piece.of( Tetromino.LINE ), dim[0] - 1 );
+
+		// Inner released first: rolling back to the outer one still reverts everything.
+		int outer = board.mark();
+		for ( Move move : stack ) {
+			move.play( board );
+		}
+
+		int inner = board.mark();
+		check( clearing.play( board ) >= 4, "the vertical line clears, " + mode );
+		board.release( inner );
+		expectDead( board, inner, "released inner, " + mode );
+		board.rollbackTo( outer );
+		compare( board, replay( dim, mode, new ArrayList<Move>() ), "outer after inner release, " + mode );
+
+		// Outer released first: the nested savepoints die, the changes are kept.
+		List<Move> moves = new ArrayList<Move>( stack.subList( 0, 2 ) );
+		moves.get( 0 ).play( board );
+		inner = board.mark();
+		moves.get( 1 ).play( board );
+		int innermost = board.mark();
+		board.release( outer );
+		expectDead( board, inner, "outer released, " + mode );
+		expectDead( board, innermost, "outer released, " + mode );
+		board.commit();
+		compare( board, replay( dim, mode, moves ), "outer released, " + mode );
+
+		// A fresh savepoint reuses the slot, but not the changes before it.
+		int again = board.mark();
+		check( again == outer, "savepoints are a stack" );
+		clearing.play( board );
+		board.rollbackTo( again );
+		board.release( again );
+		compare( board, replay( dim, mode, moves ), "reused savepoint, " + mode );
+	}
+
+	/**
+	 * Random moves, savepoints, rollbacks to any live savepoint & releases of any live savepoint.
+	 *
+	 * @param mode the clear mode.
+	 */
+	public void randomSavepoints( ClearMode mode ) {
+		Random rng = new Random( 7 );
+		int acrossClears = 0;
+		int outOfOrder = 0;
+
+		for ( int[] dim : DIMENSIONS ) {
+			for ( int game = 0; game < 4; game++ ) {
+				Board board = newBoard( dim, mode );
+				board.setSanityLevel( SanityLevel.SAMPLED );
+				List<Move> moves = new ArrayList<Move>();
+
+				// Live savepoints, as { mark, moves before it, rows cleared before it }.
+				List<int[]> marks = new ArrayList<int[]>();
+				int cleared = 0;
+
+				for ( int step = 0; step < 300; step++ ) {
+					String where = mode + " " + dim[0] + "x" + dim[1] + " game " + game + " step " + step;
+					int op = rng.nextInt( 10 );
+
+					if ( op < 2 && marks.size() < 6 ) {
+						marks.add( new int[] { board.mark(), moves.size(), cleared } );
+					} else if ( op == 2 && !marks.isEmpty() ) {
+						int i = rng.nextInt( marks.size() );
+						int[] mark = marks.get( i );
+						board.rollbackTo( mark[0] );
+
+						acrossClears += cleared > mark[2] ? 1 : 0;
+						cleared = mark[2];
+						moves.subList( mark[1], moves.size() ).clear();
+						marks.subList( i + 1, marks.size() ).clear();
+						compare( board, replay( dim, mode, moves ), "rollback, " + where );
+					} else if ( op == 3 && !marks.isEmpty() ) {
+						int i = rng.nextInt( marks.size() );
+						outOfOrder += i + 1 < marks.size() ? 1 : 0;
+						board.release( marks.get( i )[0] );
+						marks.subList( i, marks.size() ).clear();
+
+						if ( marks.isEmpty() ) {
+							board.commit();
+						}
+					} else {
+						Piece piece = Piece.of( Tetromino.values()[rng.nextInt( Tetromino.values().length )] );
+						for ( int r = rng.nextInt( 4 ); r > 0; r-- ) {
+							piece = piece.nextRotation();
+						}
+
+						// Lands as low as possible, so rows fill & clear.
+						int x = rng.nextInt( dim[0] - piece.getWidth() + 1 );
+						for ( int other = 0; other + piece.getWidth() <= dim[0]; other++ ) {
+							if ( board.dropHeight( piece, other ) < board.dropHeight( piece, x ) ) {
+								x = other;
+							}
+						}
+
+						Move move = new Move( piece, x );
+						int rows = move.play( board );
+						if ( rows < 0 ) {
+							break;
+						}
+
+						cleared += rows;
+						moves.add( move );
+						if ( marks.isEmpty() ) {
+							board.commit();
+						}
+					}
+				}
+
+				while ( !marks.isEmpty() ) {
+					int[] mark = marks.remove( 0 );
+					board.rollbackTo( mark[0] );
+					acrossClears += cleared > mark[2] ? 1 : 0;
+					cleared = mark[2];
+					moves.subList( mark[1], moves.size() ).clear();
+					marks.clear();
+					compare( board, replay( dim, mode, moves ), mode + " " + dim[0] + "x" + dim[1] + " game " + game + " final rollback" );
+					board.release( mark[0] );
+				}
+			}
+		}
+
+		check( acrossClears > 0, "some rollbacks cross a clear, " + mode );
+		check( outOfOrder > 0, "some releases are out of order, " + mode );
+	}
+
+	/**
+	 * Pushes garbage rows with the hole at alternating walls, the stack rests on it in every mode.
+	 */
+	private static void prefill( Board board, int rows ) {
+		for ( int y = 0; y < rows; y++ ) {
+			check( board.addGarbage( 1, y % 2 == 0 ? 0 : board.getWidth() - 1, Piece.of( Tetromino.LINE ) ), "prefill fits" );
+		}
+
+		board.commit();
+	}
+
+	/**
+	 * A garbage lift is reverted by {@link Board#undo()} & by a rollback,
+	 * also when it grows the row storage or fills the board to the top.
+	 *
+	 * @param mode the clear mode.
+	 */
+	public void garbageLiftRoundTrip( ClearMode mode ) {
+		int[] dim = { 8, 200 };
+		Piece garbage = Piece.of( Tetromino.TAU );
+		Move move = new Move( Piece.of( Tetromino.SQUARE ), 3 );
+
+		// The last prefills put the stack just below the initial 64 rows of storage.
+		for ( int rows : new int[] { 0, 20, 60, 62 } ) {
+			String where = mode + " prefill " + rows;
+			Board board = newBoard( dim, mode );
+			prefill( board, rows );
+			Board copy = newBoard( dim, mode );
+			prefill( copy, rows );
+
+			// undo() reverts the placement & the lift after it.
+			move.play( board );
+			check( board.addGarbage( 6, 2, garbage ), "lift fits, " + where );
+			board.undo();
+			compare( board, copy, "undo of a lift, " + where );
+
+			// Nested rollbacks, the inner lift reaches the top of the board.
+			int outer = board.mark();
+			check( board.addGarbage( 3, 2, garbage ), "lift fits, " + where );
+			move.play( board );
+
+			Board lifted = newBoard( dim, mode );
+			prefill( lifted, rows );
+			lifted.addGarbage( 3, 2, garbage );
+			move.play( lifted );
+			lifted.commit();
+			compare( board, lifted, "lifted, " + where );
+
+			int inner = board.mark();
+			check( board.addGarbage( dim[1] - board.getMaxHeight(), 5, garbage ), "lift to the top fits, " + where );
+			check( board.getMaxHeight() == dim[1], "lifted to the top, " + where );
+			check( !board.addGarbage( 1, 5, garbage ), "nothing lifts past the top, " + where );
+			board.checkSanity();
+
+			board.rollbackTo( inner );
+			compare( board, lifted, "rollback of a lift to the top, " + where );
+
+			board.rollbackTo( outer );
+			compare( board, copy, "rollback of both lifts, " + where );
+			board.release( outer );
+
+			// The grown storage is reused by the next lift.
+			check( board.addGarbage( 70, 2, garbage ) && copy.addGarbage( 70, 2, garbage ), "lift fits, " + where );
+			board.commit();
+			copy.commit();
+			compare( board, copy, "lift after rollback, " + where );
+		}
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * This file is part of aTetria.
+ *
+ * aTetria is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aTetria is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aTetria. If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.centril.atetria.model;
+
+import java.util.Random;
+
+import se.centril.atetria.framework.geom.Position;
+import se.centril.atetria.framework.rng.MersenneTwisterFast;
+import se.centril.atetria.model.command.Command;
+import se.centril.atetria.model.command.HorizontalCommand;
+import se.centril.atetria.model.command.RotationCommand;
+import se.centril.atetria.model.command.VerticalCommand;
+import se.centril.atetria.model.retriever.RandomizedPieceRetriever;
+
+/**
+ * GameSimulationTest plays headless games of random commands & ticks,
+ * checking the falling piece, the published frames & the board after every step.
+ *
+ * <p>There is no test framework in the tree, so the test is an application:
+ * <code>java se.centril.atetria.model.GameSimulationTest</code>,
+ * it throws an AssertionError on the first failure.</p>
+ */
+public class GameSimulationTest {
+	private static final int WIDTH = 10;
+	private static final int HEIGHT = 20;
+	private static final int TOP_SPACE = 4;
+
+	private static final Command[] COMMANDS = {
+		HorizontalCommand.LEFT, HorizontalCommand.RIGHT,
+		RotationCommand.CLOCKWISE, RotationCommand.COUNTER_CLOCKWISE,
+		VerticalCommand.DOWN, VerticalCommand.DROP
+	};
+
+	public static void main( String[] args ) {
+		GameSimulationTest test = new GameSimulationTest();
+		test.failedFirstSpawnEndsGame();
+		test.outsideChangesArePublished();
+		test.garbageUnderPieceLiftsIt();
+		test.randomGames();
+		test.gamesAreDeterministic();
+		System.out.println( "GameSimulationTest OK" );
+	}
+
+	private static void check( boolean condition, String message ) {
+		if ( !condition ) {
+			throw new AssertionError( message );
+		}
+	}
+
+	/**
+	 * When the first piece doesn't fit, the game ends without a falling piece to control.
+	 */
+	public void failedFirstSpawnEndsGame() {
+		for ( Command command : new Command[] { VerticalCommand.DROP, VerticalCommand.DOWN, HorizontalCommand.LEFT } ) {
+			Board board = new Board( WIDTH, HEIGHT, TOP_SPACE );
+			for ( int x = 0; x < WIDTH; x += 2 ) {
+				board.place( Piece.of( Tetromino.SQUARE ), x, HEIGHT - 2 );
+			}
+
+			board.commit();
+
+			Game game = this.newGame( board, 1 );
+			game.command( command );
+			check( game.isGameOver(), "the game is over after " + command );
+			check( game.getCurrentPiece() == null, "there is no current piece" );
+			check( game.getFrame().isGameOver(), "the frame is over" );
+		}
+	}
+
+	/**
+	 * Changes to the board outside of the game's logic show up in the next frame,
+	 * & published frames never change afterwards.
+	 */
+	public void outsideChangesArePublished() {
+		Board board = new Board( WIDTH, HEIGHT, TOP_SPACE );
+		Game game = this.newGame( board, 1 );
+		game.tick();
+		GameFrame first = game.getFrame();
+		long firstHash = first.getBoard().stateHash();
+		Position firstPos = first.getCurrentPosition();
+
+		synchronized ( game ) {
+			check( board.addGarbage( 2, 3, Piece.of( Tetromino.LINE ) ), "garbage fits" );
+			board.commit();
+			game.refresh();
+		}
+
+		GameFrame second = game.getFrame();
+		check( second != first, "a new frame is published" );
+		check( second.getBoard().stateHash() == board.stateHash(), "the garbage is in the frame" );
+		check( second.getBoard().getRow( 1 ).getState( 0 ) != Board.EMPTY, "garbage row in the frame" );
+		check( second.getCurrentPosition().equals( game.getCurrentPosition() ), "frame position" );
+
+		for ( int i = 0; i < 3; i++ ) {
+			game.tick();
+		}
+
+		check( first.getBoard().stateHash() == firstHash && first.getBoard().getRow( 1 ).getState( 0 ) == Board.EMPTY, "the first frame keeps its board" );
+		check( first.getCurrentPosition() == firstPos && firstPos.y() > game.getCurrentPosition().y(), "the first frame keeps its position" );
+	}
+
+	/**
+	 * Garbage lifting the stack into the falling piece pushes the piece up,
+	 * & ends the game once there is no room left above.
+	 */
+	public void garbageUnderPieceLiftsIt() {
+		Board board = new Board( WIDTH, HEIGHT, TOP_SPACE );
+		Game game = this.newGame( board, 1 );
+		while ( game.getCurrentPosition() == null || game.getCurrentPosition().y() > 2 ) {
+			game.tick();
+		}
+
+		int score = game.getScore();
+		Position before = game.getCurrentPosition();
+		synchronized ( game ) {
+			check( board.addGarbage( 4, 0, Piece.of( Tetromino.LINE ) ), "garbage fits" );
+			board.commit();
+			game.refresh();
+		}
+
+		Position pos = game.getCurrentPosition();
+		check( pos.y() == 4, "the piece is pushed up onto the garbage" );
+		check( before.y() <= 2, "an earlier position is a copy, it doesn't follow the piece" );
+		check( board.canPlace( game.getCurrentPiece(), pos.x(), pos.y() ), "the piece fits" );
+		check( game.getFrame().getCurrentPosition().equals( pos ), "frame position" );
+
+		// Landing the piece locks it whole on top of the garbage.
+		game.command( VerticalCommand.DROP );
+		check( game.isActive() && game.getScore() == score + 1, "the piece locks" );
+		check( board.getMaxHeight() > 4, "the piece is on the garbage" );
+
+		synchronized ( game ) {
+			board.addGarbage( HEIGHT - board.getMaxHeight(), 0, Piece.of( Tetromino.LINE ) );
+			board.commit();
+			game.refresh();
+		}
+
+		check( game.isGameOver() && game.getCurrentPiece() == null, "no room left ends the game" );
+		check( game.getFrame().isGameOver(), "the frame is over" );
+	}
+
+	/**
+	 * Plays random games, checking the state after every step.
+	 */
+	public void randomGames() {
+		Random rng = new Random( 5 );
+		for ( int game = 0; game < 40; game++ ) {
+			this.play( rng.nextLong(), true );
+		}
+	}
+
+	/**
+	 * Games of the same seeds play out the same.
+	 */
+	public void gamesAreDeterministic() {
+		for ( long seed = 1; seed <= 5; seed++ ) {
+			long[] first = this.play( seed, false );
+			long[] second = this.play( seed, false );
+			check( first[0] == second[0] && first[1] == second[1] && first[2] == second[2], "seed " + seed + " plays the same" );
+		}
+	}
+
+	/**
+	 * Plays a game to its end.
+	 *
+	 * @param seed the seed of the commands & pieces.
+	 * @param checked whether or not to check the state after every step.
+	 * @return the score, the no. of steps & the final board hash.
+	 */
+	private long[] play( long seed, boolean checked ) {
+		Random rng = new Random( seed );
+		Board board = new Board( WIDTH, HEIGHT, TOP_SPACE );
+		board.setSanityLevel( checked ? SanityLevel.FULL : SanityLevel.OFF );
+		Game game = this.newGame( board, rng.nextLong() );
+
+		long steps = 0;
+		while ( game.isActive() ) {
+			check( steps++ < 1000000, "the game ends" );
+
+			if ( rng.nextInt( 3 ) == 0 ) {
+				game.tick();
+			} else {
+				game.command( COMMANDS[rng.nextInt( COMMANDS.length )] );
+			}
+
+			if ( checked ) {
+				this.checkState( game );
+			}
+		}
+
+		return new long[] { game.getScore(), steps, board.stateHash() };
+	}
+
+	/**
+	 * Checks the falling piece & the published frame against the board.
+	 *
+	 * @param game the game.
+	 */
+	private void checkState( Game game ) {
+		Board board = game.getBoard();
+		GameFrame frame = game.getFrame();
+
+		check( frame.getCurrentPiece() == game.getCurrentPiece(), "frame piece" );
+		check( frame.getBoard().stateHash() == board.stateHash(), "frame board" );
+		check( frame.getScore() == game.getScore(), "frame score" );
+		check( frame.isGameOver() == game.isGameOver(), "frame game over" );
+
+		if ( game.isActive() ) {
+			Position pos = game.getCurrentPosition();
+			check( frame.getCurrentPosition().equals( pos ), "frame position" );
+
+			// The falling piece is an overlay, it is never in the board & always fits it.
+			check( board.canPlace( game.getCurrentPiece(), pos.x(), pos.y() ), "current piece fits" );
+
+			// Every locked piece added 4 positions, every clear removed a row of them.
+			int filled = 0;
+			for ( int y = 0; y < board.getMaxHeight(); y++ ) {
+				filled += board.getRowWidth( y );
+			}
+
+			int locked = 4 * (game.getScore() - 1);
+			check( filled <= locked && (locked - filled) % WIDTH == 0, "no position is lost or added" );
+		}
+	}
+
+	/**
+	 * Creates a game with random tetrominoes.
+	 *
+	 * @param board the board.
+	 * @param seed the seed of the pieces.
+	 * @return the game.
+	 */
+	private Game newGame( Board board, long seed ) {
+		MersenneTwisterFast mt = new MersenneTwisterFast();
+		mt.setSeed( seed );
+
+		RandomizedPieceRetriever retriever = new RandomizedPieceRetriever();
+		retriever.setRandomizer( mt );
+		retriever.setPieceFactory( new PieceFactory() );
+
+		Game game = new Game( board );
+		game.setNextQueueSize( 5 );
+		game.setPieceRetriever( retriever );
+		return game;
+	}
+}